@@ -0,0 +1,33 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks as JMH's own Main does, with the gc profiler turned on,
+ * so the allocation rate per operation (gc.alloc.rate.norm) is reported next to the throughput.<br/><br/>
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain(){}
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        boolean gcProfiler = false;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-prof") && args[i + 1].startsWith("gc")) {
+                gcProfiler = true;
+            }
+        }
+        if (!gcProfiler) {
+            jmhArgs.add(0, "-prof");
+            jmhArgs.add(1, "gc");
+        }
+        Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
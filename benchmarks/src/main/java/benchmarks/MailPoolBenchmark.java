@@ -0,0 +1,175 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.Clock;
+import automail.MailItem;
+import automail.Robot;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+import strategies.IndexedMailPool;
+import strategies.MailPool;
+import util.EventLog;
+
+/**
+ * Benchmarks of the mail pool: adding mail items with addToPool and addAllToPool,
+ * and loading them into waiting robots with step.<br/><br/>
+ *
+ * One operation works on a whole backlog of mail items, starting from an empty pool,
+ * so the pool goes through every size from 0 to the backlog:<br/>
+ * - addToPool adds the backlog one item at a time<br/>
+ * - addAllToPool adds the backlog as one batch<br/>
+ * - addAllToPoolAndStep adds the backlog as one batch, then calls step until the pool is empty.
+ * The robots hand their items straight back and wait again, so all of them are waiting at every step.
+ * The cost of step is that of addAllToPoolAndStep less that of addAllToPool.<br/><br/>
+ *
+ * Mail items heavier than the robots can carry as a team are rejected as in the Simulation,
+ * so the Mail_Max_Weight cases differ in the number of items and team deliveries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailPoolBenchmark {
+
+    @Param({"strategies.IndexedMailPool", "strategies.MailPool"})
+    public String mailPool;
+
+    @Param({"100", "1000", "10000"})
+    public int backlog;
+
+    @Param({"1", "3", "10", "1000"})
+    public int robots;
+
+    @Param({"10", "50"})
+    public int floors;
+
+    @Param({"2000", "3000", "5000"})
+    public int maxWeight;
+
+    private MailItem[] items;
+    private List<MailItem> itemList;
+    private Clock clock;
+    private EventLog eventLog;
+    private LinkedList<Robot> waiting;
+    private DrainRobot[] fleet;
+
+    @Setup
+    public void setup() {
+        items = Workload.mailItems(backlog, floors, maxWeight);
+        itemList = Arrays.asList(items);
+        clock = new Clock(Integer.MAX_VALUE);
+        eventLog = new EventLog(EventLog.Level.SUMMARY, OutputStream.nullOutputStream());
+        fleet = new DrainRobot[robots];
+        for (int i = 0; i < robots; i++) {
+            fleet[i] = new DrainRobot(i, clock, eventLog);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        eventLog.close();
+    }
+
+    /**
+     * @return an empty mail pool of the benchmarked kind, for the benchmarked number of robots
+     */
+    private IMailPool newPool() {
+        waiting = new LinkedList<>();
+        if (mailPool.equals(MailPool.class.getName())) {
+            return new MailPool(new LinkedList<>(), waiting, robots, clock, eventLog);
+        }
+        return new IndexedMailPool(waiting, robots, clock, eventLog);
+    }
+
+    @Benchmark
+    public IMailPool addToPool() {
+        IMailPool pool = newPool();
+        for (MailItem item : items) {
+            pool.addToPool(item);
+        }
+        return pool;
+    }
+
+    @Benchmark
+    public IMailPool addAllToPool() {
+        IMailPool pool = newPool();
+        pool.addAllToPool(itemList);
+        return pool;
+    }
+
+    @Benchmark
+    public int addAllToPoolAndStep() throws ItemTooHeavyException {
+        IMailPool pool = newPool();
+        pool.addAllToPool(itemList);
+        int loaded = 0;
+        while (true) {
+            waiting.clear();
+            for (DrainRobot robot : fleet) {
+                robot.loaded = 0;
+                pool.registerWaiting(robot);
+            }
+            pool.step();
+            int loadedThisStep = 0;
+            for (DrainRobot robot : fleet) {
+                loadedThisStep += robot.loaded;
+            }
+            if (loadedThisStep == 0) {
+                return loaded;
+            }
+            loaded += loadedThisStep;
+        }
+    }
+
+    /**
+     * A DrainRobot waits at the mail room and drops every item it is loaded with,
+     * so it is ready to be loaded again straight away
+     */
+    private static class DrainRobot extends Robot {
+
+        int loaded;
+
+        DrainRobot(int index, Clock clock, EventLog eventLog) {
+            super(index, null, null, clock, eventLog);
+        }
+
+        @Override
+        public RobotState getCurrentState() {
+            return RobotState.WAITING;
+        }
+
+        @Override
+        public void addToHand(MailItem mailItem) {
+            loaded++;
+        }
+
+        @Override
+        public void addToTube(MailItem mailItem) {
+            loaded++;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.Clock;
+import automail.MailItem;
+import util.EventLog;
+import util.ReportDelivery;
+
+/**
+ * Benchmark of ReportDelivery.deliver: marking a mail item delivered, logging the delivery
+ * and adding its score.<br/><br/>
+ *
+ * One operation delivers one mail item that has not been delivered before. At Log_Level=SUMMARY
+ * nothing is logged; at TEXT and COMPACT the delivery is written out to a stream that discards it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportDeliveryBenchmark {
+
+    /** The number of mail items delivered before the report starts over */
+    private static final int MAIL_ITEMS = 1 << 20;
+
+    @Param({"SUMMARY", "TEXT", "COMPACT"})
+    public String logLevel;
+
+    @Param({"10", "50"})
+    public int floors;
+
+    @Param({"2000", "3000", "5000"})
+    public int maxWeight;
+
+    private MailItem[] items;
+    private int nextItem;
+    private Clock clock;
+    private EventLog eventLog;
+    private ReportDelivery delivery;
+
+    @Setup(Level.Trial)
+    public void setupItems() {
+        items = Workload.mailItems(MAIL_ITEMS, floors, maxWeight);
+        clock = new Clock(Integer.MAX_VALUE);
+        // Deliver long enough after arrival that the score is a real power
+        clock.Advance(1000);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupReport() {
+        eventLog = new EventLog(EventLog.parseLevel(logLevel), OutputStream.nullOutputStream());
+        delivery = new ReportDelivery(clock, eventLog);
+        nextItem = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        eventLog.close();
+    }
+
+    @Benchmark
+    public double deliver() {
+        if (nextItem == items.length) {
+            delivery = new ReportDelivery(clock, eventLog);
+            nextItem = 0;
+        }
+        delivery.deliver(items[nextItem++]);
+        return delivery.getTotalScore();
+    }
+}
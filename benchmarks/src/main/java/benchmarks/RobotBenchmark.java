@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.Clock;
+import automail.IMailDelivery;
+import automail.MailItem;
+import automail.RobotFleet;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+import strategies.IndexedMailPool;
+import util.EventLog;
+
+/**
+ * Benchmark of stepping a whole fleet of robots kept busy by a mail pool.<br/><br/>
+ *
+ * One operation is one unit of time of the Simulation: the mail pool loads the waiting robots,
+ * then every robot steps once. The pool is topped up so there is always mail to deliver,
+ * and the fleet spends its time delivering, returning and waiting as it does under load.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RobotBenchmark {
+
+    /** The number of mail items cycled through the pool, enough that none is in two places at once */
+    private static final int MAIL_ITEMS = 1 << 16;
+
+    @Param({"1", "3", "10", "1000"})
+    public int robots;
+
+    @Param({"10", "50"})
+    public int floors;
+
+    @Param({"2000", "3000", "5000"})
+    public int maxWeight;
+
+    private MailItem[] items;
+    private int nextItem;
+    private long added;
+    private Clock clock;
+    private EventLog eventLog;
+    private IMailPool mailPool;
+    private RobotFleet fleet;
+    private CountingDelivery delivery;
+
+    @Setup
+    public void setup() {
+        clock = new Clock(Integer.MAX_VALUE);
+        eventLog = new EventLog(EventLog.Level.SUMMARY, OutputStream.nullOutputStream());
+        mailPool = new IndexedMailPool(new LinkedList<>(), robots, clock, eventLog);
+        // Only mail items the fleet can carry, so every item added is delivered
+        items = Arrays.stream(Workload.mailItems(MAIL_ITEMS, floors, maxWeight))
+                .filter(item -> item.getWeight() <= mailPool.getSysMaxWeight())
+                .toArray(MailItem[]::new);
+        delivery = new CountingDelivery();
+        fleet = new RobotFleet(robots, delivery, mailPool, clock, eventLog);
+    }
+
+    @TearDown
+    public void tearDown() {
+        eventLog.close();
+    }
+
+    @Benchmark
+    public long step() throws ItemTooHeavyException {
+        // Keep at least two items per robot in the pool
+        if (added - delivery.delivered < 2L * robots) {
+            for (int i = 0; i < robots; i++) {
+                mailPool.addToPool(items[nextItem]);
+                nextItem = (nextItem + 1) % items.length;
+            }
+            added += robots;
+        }
+        mailPool.step();
+        fleet.step();
+        clock.Tick();
+        return delivery.delivered;
+    }
+
+    /**
+     * A CountingDelivery counts the mail items delivered and nothing else
+     */
+    private static class CountingDelivery implements IMailDelivery {
+
+        long delivered;
+
+        @Override
+        public void deliver(MailItem mailItem) {
+            delivered++;
+        }
+    }
+}
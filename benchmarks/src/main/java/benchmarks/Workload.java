@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.Random;
+
+import automail.Building;
+import automail.MailItem;
+import automail.PriorityMailItem;
+
+/**
+ * A Workload makes mail items with the same distribution of destination floor, weight
+ * and priority as {@link util.MailGenerator}, from a fixed seed so every run of a benchmark
+ * works on the same items.
+ */
+final class Workload {
+
+    static final long SEED = 30006;
+
+    private Workload(){}
+
+    /**
+     * @param count the number of mail items to make
+     * @param floors the number of floors of the building
+     * @param maxWeight the maximum weight of a mail item, as Mail_Max_Weight
+     * @return mail items with ids 0 to count - 1, arriving at time 1
+     */
+    static MailItem[] mailItems(int count, int floors, int maxWeight) {
+        Random random = new Random(SEED);
+        MailItem[] items = new MailItem[count];
+        for (int id = 0; id < count; id++) {
+            int destination = Building.LOWEST_FLOOR + random.nextInt(floors);
+            int priority = 10 * (1 + random.nextInt(10));
+            int weight = (int) (200.0 + Math.abs(random.nextGaussian()) * 1000.0);
+            weight = Math.min(weight, maxWeight);
+            // One in six mail items is a priority item
+            items[id] = random.nextInt(6) > 0
+                    ? new MailItem(id, destination, 1, weight)
+                    : new PriorityMailItem(id, destination, 1, weight, priority);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,85 @@
+package automail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import exceptions.ItemTooHeavyException;
+import util.Configuration;
+
+class SimulationEngineCheckpointTest {
+
+	@TempDir
+	Path directory;
+
+	private static Configuration configuration(String... properties) {
+		Properties values = new Properties();
+		values.setProperty("Seed", "30006");
+		values.setProperty("Floors", "12");
+		values.setProperty("Mail_to_Create", "500");
+		values.setProperty("Mail_Max_Weight", "2000");
+		values.setProperty("Last_Delivery_Time", "300");
+		values.setProperty("Robots", "3");
+		for (int i = 0; i < properties.length; i += 2) {
+			values.setProperty(properties[i], properties[i + 1]);
+		}
+		return Configuration.of(values);
+	}
+
+	private static String run(Configuration configuration, SimulationResult[] result) throws ItemTooHeavyException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		result[0] = new SimulationEngine(configuration, out).run();
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	private void assertResumesToTheSameOutput(String... properties) throws ItemTooHeavyException {
+		String checkpoint = directory.resolve("simulation.checkpoint").toString();
+		Configuration configuration = configuration(properties);
+		SimulationResult[] full = new SimulationResult[1];
+		String fullOutput = run(configuration.with("Checkpoint_File", checkpoint).with("Checkpoint_Interval", "40"), full);
+		assertTrue(Files.exists(Path.of(checkpoint)));
+
+		SimulationResult[] resumed = new SimulationResult[1];
+		String resumedOutput = run(configuration.with("Resume_From", checkpoint), resumed);
+
+		// The resumed run prints the events after the last checkpoint, as the full run did
+		assertTrue(!resumedOutput.isEmpty() && resumedOutput.length() < fullOutput.length());
+		assertTrue(fullOutput.endsWith(resumedOutput));
+		assertEquals(full[0].toString(), resumed[0].toString());
+	}
+
+	@Test
+	void resumesTickEngine() throws ItemTooHeavyException {
+		assertResumesToTheSameOutput();
+	}
+
+	@Test
+	void resumesEventEngine() throws ItemTooHeavyException {
+		assertResumesToTheSameOutput("Engine", "EVENT", "MailPool", "strategies.MailPool");
+	}
+
+	@Test
+	void resumesStreamedMail() throws ItemTooHeavyException {
+		assertResumesToTheSameOutput("Mail_Generation", "STREAM", "Robot_Threads", "2");
+	}
+
+	@Test
+	void refusesACheckpointOfAnotherConfiguration() throws ItemTooHeavyException {
+		String checkpoint = directory.resolve("simulation.checkpoint").toString();
+		run(configuration("Checkpoint_File", checkpoint, "Checkpoint_Interval", "40"), new SimulationResult[1]);
+
+		SimulationEngine engine = new SimulationEngine(configuration("Robots", "4", "Resume_From", checkpoint),
+				new ByteArrayOutputStream());
+		assertThrows(UncheckedIOException.class, engine::run);
+	}
+}
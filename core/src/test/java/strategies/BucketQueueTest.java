@@ -0,0 +1,118 @@
+package strategies;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import automail.MailItem;
+
+class BucketQueueTest {
+
+	private static MailItem item(int id) {
+		return new MailItem(id, 1 + id % 10, id, 100 + id);
+	}
+
+	private static List<MailItem> items(BucketQueue queue) {
+		List<MailItem> items = new ArrayList<>();
+		queue.items().forEach(items::add);
+		return items;
+	}
+
+	private static List<Integer> indexes(Iterable<MailItem> items) {
+		List<Integer> indexes = new ArrayList<>();
+		for (MailItem item : items) {
+			indexes.add(item.getIndex());
+		}
+		return indexes;
+	}
+
+	@Test
+	void pollsInTheOrderAdded() {
+		Object owner = new Object();
+		BucketQueue queue = new BucketQueue();
+		assertTrue(queue.isEmpty());
+		assertNull(queue.pollFirst(owner));
+		// Enough items for a trie of three levels
+		List<MailItem> added = new ArrayList<>();
+		for (int id = 0; id < 1100; id++) {
+			added.add(item(id));
+			queue.addLast(owner, added.get(id), 1 + id % 3);
+		}
+		assertEquals(added, items(queue));
+		for (int id = 0; id < 1100; id++) {
+			assertEquals(1 + id % 3, queue.peekFirstTeamSize());
+			assertSame(added.get(id), queue.pollFirst(owner));
+		}
+		assertTrue(queue.isEmpty());
+		assertNull(queue.pollFirst(owner));
+
+		// An emptied queue takes items again
+		queue.addLast(owner, added.get(0), 2);
+		assertEquals(2, queue.peekFirstTeamSize());
+		assertSame(added.get(0), queue.pollFirst(owner));
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void forkAndParentChangeIndependently() {
+		int forked = 100000;
+		Object owner = new Object();
+		BucketQueue parent = new BucketQueue();
+		ArrayDeque<MailItem> parentItems = new ArrayDeque<>();
+		int id = 0;
+		for (; id < 1040; id++) {
+			parent.addLast(owner, item(id), 1);
+			parentItems.addLast(item(id));
+		}
+		for (int i = 0; i < 30; i++) {
+			parent.pollFirst(owner);
+			parentItems.pollFirst();
+		}
+
+		// Fork the way IndexedMailPool does: the fork gets an owner of its own and the parent a new one
+		BucketQueue fork = new BucketQueue(parent);
+		Object forkOwner = new Object();
+		owner = new Object();
+		ArrayDeque<MailItem> forkItems = new ArrayDeque<>(parentItems);
+
+		// Each polls across a leaf boundary and adds items of its own into the nodes they share
+		for (int i = 0; i < 40; i++) {
+			assertEquals(parentItems.pollFirst().getIndex(), parent.pollFirst(owner).getIndex());
+		}
+		for (int i = 0; i < 50; i++, id++) {
+			parent.addLast(owner, item(id), 2);
+			parentItems.addLast(item(id));
+		}
+		for (int i = 0; i < 70; i++, id++) {
+			fork.addLast(forkOwner, item(forked + id), 3);
+			forkItems.addLast(item(forked + id));
+		}
+		for (int i = 0; i < 5; i++) {
+			assertEquals(forkItems.pollFirst().getIndex(), fork.pollFirst(forkOwner).getIndex());
+		}
+
+		assertEquals(indexes(parentItems), indexes(items(parent)));
+		assertEquals(indexes(forkItems), indexes(items(fork)));
+
+		// Both drain to their own items
+		while (!parentItems.isEmpty()) {
+			assertEquals(parentItems.pollFirst().getIndex(), parent.pollFirst(owner).getIndex());
+		}
+		assertTrue(parent.isEmpty());
+		assertEquals(indexes(forkItems), indexes(items(fork)));
+		while (!forkItems.isEmpty()) {
+			int teamSize = fork.peekFirstTeamSize();
+			MailItem expected = forkItems.pollFirst();
+			assertEquals(expected.getIndex() >= forked ? 3 : 1, teamSize);
+			assertEquals(expected.getIndex(), fork.pollFirst(forkOwner).getIndex());
+		}
+		assertTrue(fork.isEmpty());
+	}
+}
@@ -0,0 +1,107 @@
+package strategies;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class RobotsDeliveringTest {
+
+	/** The home slot of an id in a new table of 16 slots */
+	private static int homeSlot(int id) {
+		return (id * 0x9E3779B9) >>> 28;
+	}
+
+	/**
+	 * @return ids that all have the home slot given
+	 */
+	private static List<Integer> idsAt(int slot, int n) {
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 0; ids.size() < n; id++) {
+			if (homeSlot(id) == slot) {
+				ids.add(id);
+			}
+		}
+		return ids;
+	}
+
+	@Test
+	void deletingFromAClusterKeepsTheIdsAfterIt() {
+		// Three ids probing past the last slot into the first, and one whose home is the first slot
+		List<Integer> ids = idsAt(15, 3);
+		int other = idsAt(0, 1).get(0);
+		RobotsDelivering table = new RobotsDelivering();
+		for (int i = 0; i < ids.size(); i++) {
+			table.put(ids.get(i), i + 1);
+		}
+		table.put(other, 7);
+
+		// The first id of the cluster is removed and those after it are moved back
+		table.decrement(ids.get(0));
+		assertEquals(0, table.get(ids.get(0)));
+		assertEquals(2, table.get(ids.get(1)));
+		assertEquals(3, table.get(ids.get(2)));
+		assertEquals(7, table.get(other));
+
+		table.decrement(ids.get(1));
+		table.decrement(ids.get(1));
+		assertEquals(0, table.get(ids.get(1)));
+		assertEquals(3, table.get(ids.get(2)));
+		assertEquals(7, table.get(other));
+
+		// A removed id can be added again
+		table.put(ids.get(0), 4);
+		assertEquals(4, table.get(ids.get(0)));
+		assertEquals(3, table.get(ids.get(2)));
+		assertEquals(7, table.get(other));
+
+		// Decrementing an id that is not there does nothing
+		table.decrement(ids.get(1));
+		assertEquals(0, table.get(ids.get(1)));
+	}
+
+	@Test
+	void matchesAMapThroughGrowthAndRemoval() throws IOException {
+		Random random = new Random(30006);
+		RobotsDelivering table = new RobotsDelivering();
+		Map<Integer, Integer> expected = new HashMap<>();
+		for (int step = 0; step < 100000; step++) {
+			int id = random.nextInt(500);
+			if (random.nextInt(3) == 0) {
+				int count = 1 + random.nextInt(3);
+				table.put(id, count);
+				expected.put(id, count);
+			} else {
+				table.decrement(id);
+				expected.computeIfPresent(id, (k, count) -> count == 1 ? null : count - 1);
+			}
+		}
+		for (int id = 0; id < 500; id++) {
+			assertEquals(expected.getOrDefault(id, 0).intValue(), table.get(id), "id " + id);
+		}
+
+		// A copy and a table read from a checkpoint hold the same counts
+		RobotsDelivering copy = new RobotsDelivering(table);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		table.writeState(new DataOutputStream(bytes));
+		RobotsDelivering read = new RobotsDelivering();
+		read.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		for (int id = 0; id < 500; id++) {
+			table.decrement(id);
+		}
+		for (int id = 0; id < 500; id++) {
+			assertEquals(expected.getOrDefault(id, 0).intValue(), copy.get(id), "id " + id);
+			assertEquals(expected.getOrDefault(id, 0).intValue(), read.get(id), "id " + id);
+		}
+	}
+}
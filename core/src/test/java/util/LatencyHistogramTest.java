@@ -0,0 +1,85 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    private static final double[] PERCENTILES = {0, 1, 10, 25, 50, 75, 90, 95, 99, 99.9, 99.99, 100};
+
+    /**
+     * @return the value at a percentile of sorted values, by the same nearest rank as the histogram
+     */
+    private static int exactPercentile(int[] sorted, double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * sorted.length));
+        return sorted[(int) rank - 1];
+    }
+
+    private static void assertWithinOnePercent(int[] values) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long sum = 0;
+        for (int value : values) {
+            histogram.record(value);
+            sum += value;
+        }
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(sorted[sorted.length - 1], histogram.getMax());
+        assertEquals((double) sum / values.length, histogram.getMean(), 1e-9);
+        for (double percentile : PERCENTILES) {
+            int exact = exactPercentile(sorted, percentile);
+            long value = histogram.getValueAtPercentile(percentile);
+            assertTrue(value >= exact && value <= exact + exact / 100L,
+                    "percentile " + percentile + ": " + value + " for " + exact);
+        }
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 256; value++) {
+            histogram.record(value);
+        }
+        for (int value = 0; value < 256; value++) {
+            assertEquals(value, histogram.getValueAtPercentile(100.0 * (value + 1) / 256));
+        }
+    }
+
+    @Test
+    void percentilesAreWithinOnePercent() {
+        Random random = new Random(30006);
+        int[] uniform = new int[100000];
+        for (int i = 0; i < uniform.length; i++) {
+            uniform[i] = random.nextInt(1000000);
+        }
+        assertWithinOnePercent(uniform);
+
+        // Values spread over every power of two up to the largest int
+        int[] spread = new int[100000];
+        for (int i = 0; i < spread.length; i++) {
+            spread[i] = (int) Math.min(Integer.MAX_VALUE, (long) Math.exp(random.nextDouble() * Math.log(Integer.MAX_VALUE)));
+        }
+        spread[0] = Integer.MAX_VALUE;
+        assertWithinOnePercent(spread);
+    }
+
+    @Test
+    void emptyAndNegative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean());
+
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,111 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import automail.Building;
+import automail.Clock;
+import automail.PriorityMailItem;
+import strategies.IndexedMailPool;
+
+class MailLogReplayTest {
+
+    @TempDir
+    Path directory;
+
+    private final Clock clock = new Clock(100);
+
+    private MailLogReplay open(String name, String... lines) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, List.of(lines));
+        IndexedMailPool mailPool = new IndexedMailPool(new LinkedList<>(), 3, clock, EventLog.NONE);
+        return new MailLogReplay(file.toString(), mailPool, new Building(10), clock, EventLog.NONE);
+    }
+
+    /**
+     * @return the number of mail items arrived so far, as getMailCreated counts one more while rows are left
+     */
+    private static int arrived(MailLogReplay replay) {
+        return replay.getMailCreated() - (replay.getNextArrivalTime() >= 0 ? 1 : 0);
+    }
+
+    /**
+     * This method replays a log to its end
+     * @return the arrival time of each mail item, and the id and priority of each priority item
+     */
+    private List<String> replay(MailLogReplay replay) {
+        List<String> arrivals = new ArrayList<>();
+        replay.generateAllMail();
+        while (replay.getNextArrivalTime() >= 0) {
+            clock.Advance(replay.getNextArrivalTime() - clock.Time());
+            int before = arrived(replay);
+            PriorityMailItem priority = replay.step();
+            for (int i = before; i < arrived(replay); i++) {
+                arrivals.add(String.valueOf(clock.Time()));
+            }
+            if (priority != null) {
+                arrivals.add("priority " + priority.getIndex() + " " + priority.getPriorityLevel());
+            }
+        }
+        return arrivals;
+    }
+
+    @Test
+    void malformedCsvRowsAreSkipped() throws IOException {
+        MailLogReplay replay = open("mail.csv",
+                "weight,arrival_time,destination_floor,priority",
+                "500,1,3,",
+                "500,2,abc",
+                "500,2,20",
+                "-1,2,4",
+                "500,2,4,101",
+                "500,0,4",
+                "500,-1,4",
+                "500,3",
+                "",
+                "700,4,5,10",
+                "800,4,6",
+                "900,5,7,null");
+
+        assertEquals(List.of("1", "4", "4", "priority 1 10", "5"), replay(replay));
+        assertEquals(7, replay.getMalformedRows());
+        assertEquals(4, replay.getMailCreated());
+    }
+
+    @Test
+    void malformedJsonRowsAreSkipped() throws IOException {
+        MailLogReplay replay = open("mail.jsonl",
+                "{\"arrival_time\": 1, \"destination_floor\": 3, \"weight\": 500}",
+                "[1, 3, 500]",
+                "{\"arrival_time\": 2, \"destination_floor\": 3}",
+                "{\"arrival_time\": 2, \"destination_floor\": \"three\", \"weight\": 500}",
+                "{\"arrival_time\": 2, \"destination_floor: 3, \"weight\": 500}",
+                "{\"arrival_time\": 2 \"destination_floor\": 3, \"weight\": 500}",
+                "{\"arrival_time\": 2, \"destination_floor\": 3, \"weight\": 500, \"priority\": -4}",
+                "{\"arrival_time\": 2, \"destination_floor\": 3, \"weight\": 500",
+                "{\"arrival_time\": 3, \"destination_floor\": 4, \"weight\": 600, \"priority\": 50, \"sender\": \"x\"}",
+                "{\"weight\": \"700\", \"arrival_time\": 3, \"destination_floor\": 5, \"priority\": null}");
+
+        assertEquals(List.of("1", "3", "3", "priority 1 50"), replay(replay));
+        assertEquals(7, replay.getMalformedRows());
+        assertEquals(3, replay.getMailCreated());
+    }
+
+    @Test
+    void aLogOfMalformedRowsHasNoMail() throws IOException {
+        MailLogReplay replay = open("bad.csv", "1,2", "x,y,z", "1,2,3,4x");
+
+        assertEquals(List.of(), replay(replay));
+        assertEquals(3, replay.getMalformedRows());
+        assertEquals(0, replay.getMailCreated());
+    }
+}
@@ -1,24 +1,51 @@
 package automail;
 
+/**
+ * A Clock keeps the time of one Simulation
+ */
 public class Clock {
 	
 	/** Represents the current time **/
-    private static int Time = 0;
+    private int Time = 0;
     
     /** The threshold for the latest time for mail to arrive **/
-    public static int LAST_DELIVERY_TIME;
+    public final int LAST_DELIVERY_TIME;
+
+    /**
+     * @param lastDeliveryTime the latest time for mail to arrive
+     */
+    public Clock(int lastDeliveryTime) {
+    	this.LAST_DELIVERY_TIME = lastDeliveryTime;
+    }
+
+    /**
+     * A copy of a clock, which keeps its own time from then on
+     * @param clock the clock copied
+     */
+    public Clock(Clock clock) {
+    	this.LAST_DELIVERY_TIME = clock.LAST_DELIVERY_TIME;
+    	this.Time = clock.Time;
+    }
 
     /**
      * @return The current time as an int value
      */
-    public static int Time() {
+    public int Time() {
     	return Time;
     }
     
     /**
      * This method increases the current time int value by 1
      */
-    public static void Tick() {
+    public void Tick() {
     	Time++;
     }
+
+    /**
+     * This method increases the current time int value by a number of units at once
+     * @param ticks the number of units of time to skip
+     */
+    public void Advance(int ticks) {
+    	Time += ticks;
+    }
 }
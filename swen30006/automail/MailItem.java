@@ -1,8 +1,5 @@
 package automail;
 
-import java.util.Map;
-import java.util.TreeMap;
-
 // import java.util.UUID;
 
 /**
@@ -12,8 +9,8 @@ public class MailItem {
 	
     /** Represents the destination floor to which the mail is intended to go */
     protected final int DESTINATION_FLOOR;
-    /** The mail identifier */
-    protected final String ID;
+    /** The mail identifier, a dense sequential number starting at 0 */
+    protected final int ID;
     /** The time the mail item arrived */
     protected final int ARRIVAL_TIME;
     /** The weight in grams of the mail item */
@@ -21,13 +18,14 @@ public class MailItem {
 
     /**
      * Constructor for a MailItem
+     * @param id the identifier of this mail item, the number of mail items created before it
      * @param dest_floor the destination floor intended for this mail item
      * @param arrival_time the time that the mail arrived
      * @param weight the weight of this mail item
      */
-    public MailItem(int dest_floor, int arrival_time, int weight){
+    public MailItem(int id, int dest_floor, int arrival_time, int weight){
         this.DESTINATION_FLOOR = dest_floor;
-        this.ID = String.valueOf(hashCode());
+        this.ID = id;
         this.ARRIVAL_TIME = arrival_time;
         this.WEIGHT = weight;
     }
@@ -38,7 +36,7 @@ public class MailItem {
      */
     @Override
     public String toString(){
-        return String.format("Mail Item:: ID: %6s | Arrival: %4d | Destination: %2d | Weight: %4d", ID, ARRIVAL_TIME, DESTINATION_FLOOR, WEIGHT);
+        return String.format("Mail Item:: ID: %6d | Arrival: %4d | Destination: %2d | Weight: %4d", ID, ARRIVAL_TIME, DESTINATION_FLOOR, WEIGHT);
     }
 
     /**
@@ -54,6 +52,15 @@ public class MailItem {
      * @return the ID of the mail item
      */
     public String getId() {
+        return String.valueOf(this.ID);
+    }
+
+    /**
+     * This method gets the id of a mail item as a dense index,
+     * for lookups in arrays or bit sets.
+     * @return the ID of the mail item, starting at 0
+     */
+    public int getIndex() {
         return this.ID;
     }
 
@@ -73,14 +80,8 @@ public class MailItem {
        return WEIGHT;
    }
    
-	private static int count = 0;
-	private static Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
-
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
-		return hash;
+		return ID;
 	}
 }
@@ -0,0 +1,132 @@
+package automail;
+
+import java.util.Arrays;
+
+/**
+ * A MailStore keeps mail items packed in primitive arrays, one array per field,
+ * instead of as one object per mail item.<br/><br/>
+ *
+ * A mail item in the store is known by an int handle, which is its id. A {@link MailItem}
+ * is only made from the store when {@link #get(int)} is called, e.g. when the mail item arrives,
+ * so mail items waiting to arrive cost 13 bytes each rather than an object each.
+ */
+public class MailStore {
+
+    /** Priority level stored for a mail item that is not a priority item */
+    public static final int NO_PRIORITY = 0;
+
+    private int size;
+    private int[] destinations;
+    private int[] arrivalTimes;
+    private int[] weights;
+    /** Priority levels are 1 to 100, so they fit in a byte */
+    private byte[] priorityLevels;
+
+    /**
+     * @param capacity the number of mail items the store holds before it grows
+     */
+    public MailStore(int capacity) {
+        destinations = new int[capacity];
+        arrivalTimes = new int[capacity];
+        weights = new int[capacity];
+        priorityLevels = new byte[capacity];
+    }
+
+    /**
+     * This method adds a mail item to the end of the store
+     * @param destFloor the destination floor of the mail item
+     * @param arrivalTime the time the mail item arrives
+     * @param weight the weight of the mail item
+     * @param priorityLevel the priority level of the mail item, or NO_PRIORITY
+     * @return the handle of the mail item
+     */
+    public int add(int destFloor, int arrivalTime, int weight, int priorityLevel) {
+        int handle = allocate(1);
+        set(handle, destFloor, arrivalTime, weight, priorityLevel);
+        return handle;
+    }
+
+    /**
+     * This method makes room for a number of mail items at the end of the store,
+     * to be filled with set, e.g. by several threads at once
+     * @param count the number of mail items
+     * @return the handle of the first of them
+     */
+    public int allocate(int count) {
+        int first = size;
+        int needed = first + count;
+        if (needed > destinations.length) {
+            int capacity = Math.max(needed, destinations.length + (destinations.length >> 1) + 16);
+            destinations = Arrays.copyOf(destinations, capacity);
+            arrivalTimes = Arrays.copyOf(arrivalTimes, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            priorityLevels = Arrays.copyOf(priorityLevels, capacity);
+        }
+        size = needed;
+        return first;
+    }
+
+    /**
+     * This method sets the fields of a mail item already allocated
+     * @param handle the handle of the mail item
+     * @param destFloor the destination floor of the mail item
+     * @param arrivalTime the time the mail item arrives
+     * @param weight the weight of the mail item
+     * @param priorityLevel the priority level of the mail item, or NO_PRIORITY
+     */
+    public void set(int handle, int destFloor, int arrivalTime, int weight, int priorityLevel) {
+        destinations[handle] = destFloor;
+        arrivalTimes[handle] = arrivalTime;
+        weights[handle] = weight;
+        priorityLevels[handle] = (byte) priorityLevel;
+    }
+
+    /**
+     * This method makes a mail item that is not a priority item
+     * @param handle the handle of the mail item
+     */
+    public void clearPriority(int handle) {
+        priorityLevels[handle] = NO_PRIORITY;
+    }
+
+    /**
+     * @return the number of mail items in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getDestFloor(int handle) {
+        return destinations[handle];
+    }
+
+    public int getArrivalTime(int handle) {
+        return arrivalTimes[handle];
+    }
+
+    public int getWeight(int handle) {
+        return weights[handle];
+    }
+
+    /**
+     * @param handle the handle of the mail item
+     * @return the priority level of the mail item, or NO_PRIORITY if it is not a priority item
+     */
+    public int getPriorityLevel(int handle) {
+        return priorityLevels[handle];
+    }
+
+    /**
+     * This method makes the MailItem of a handle. Every call makes a new object,
+     * so a mail item should be made once and then kept by whoever needs it.
+     * @param handle the handle of the mail item
+     * @return a PriorityMailItem if the mail item has a priority level, otherwise a MailItem
+     */
+    public MailItem get(int handle) {
+        int priorityLevel = priorityLevels[handle];
+        if (priorityLevel != NO_PRIORITY) {
+            return new PriorityMailItem(handle, destinations[handle], arrivalTimes[handle], weights[handle], priorityLevel);
+        }
+        return new MailItem(handle, destinations[handle], arrivalTimes[handle], weights[handle]);
+    }
+}
@@ -5,8 +5,8 @@ public class PriorityMailItem extends MailItem{
 	/** The priority of the mail item from 1 low to 100 high */
     private final int PRIORITY_LEVEL;
     
-	public PriorityMailItem(int dest_floor, int arrival_time, int weight, int priority_level) {
-		super(dest_floor, arrival_time, weight);
+	public PriorityMailItem(int id, int dest_floor, int arrival_time, int weight, int priority_level) {
+		super(id, dest_floor, arrival_time, weight);
         this.PRIORITY_LEVEL = priority_level;
 	}
 	
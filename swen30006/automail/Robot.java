@@ -1,13 +1,14 @@
 package automail;
 
-import exceptions.ExcessiveDeliveryException;
 import exceptions.ItemTooHeavyException;
 import strategies.IMailPool;
-import java.util.Map;
-import java.util.TreeMap;
+import util.EventLog;
 
 /**
- * The robot delivers mail items
+ * The robot delivers mail items.<br/><br/>
+ *
+ * The state of a robot is kept in a {@link RobotFleet}, with the state of the other robots of the fleet.
+ * A Robot reads and changes its own entry of the fleet.
  */
 public class Robot implements IMovable{
 
@@ -15,50 +16,52 @@ public class Robot implements IMovable{
     public static final int PAIR_MAX_WEIGHT = 2600;
     public static final int TRIPLE_MAX_WEIGHT = 3000;
 
-    private IMailDelivery delivery;
     protected final String id;
+    /** The position of the robot in the fleet, starting at 0 */
+    private final int index;
     /** Possible states the robot can be in */
     public enum RobotState { DELIVERING, WAITING, RETURNING }
-    public RobotState currentState;
-    private int currentFloor;
-    private int destinationFloor;
-    private IMailPool mailPool;
-    private boolean receivedDispatch;
-    
-    private MailItem deliveryItem;
-    private MailItem tube;
 
-    /** For switching between individual and team mode */
-    private boolean teamMode; // true for working as a team. false for working as an individual
-    private int waitCounter; // Count the number of time to wait before moving a step
-    
-    private int deliveryCounter;
-    
+    /** The fleet holding the state of the robot */
+    private final RobotFleet fleet;
+    /** The position of the robot in its fleet */
+    private final int slot;
 
     /**
      * Initiates the robot's location at the start to be at the mailroom
-     * also set it to be waiting for mail.
+     * also set it to be waiting for mail. The robot has a fleet of its own.
+     * @param index the position of the robot in the fleet
      * @param delivery governs the final delivery
      * @param mailPool is the source of mail items
+     * @param clock the clock of the Simulation
+     * @param eventLog records the changes in state of the robot
+     */
+    public Robot(int index, IMailDelivery delivery, IMailPool mailPool, Clock clock, EventLog eventLog){
+        this.index = index;
+        this.id = "R" + index;
+        this.fleet = new RobotFleet(index, 1, delivery, mailPool, clock, eventLog);
+        this.slot = 0;
+        fleet.adopt(0, this);
+    }
+
+    /**
+     * A robot of a fleet
+     * @param fleet the fleet holding the state of the robot
+     * @param slot the position of the robot in its fleet
+     * @param index the position of the robot in the whole fleet
      */
-    public Robot(IMailDelivery delivery, IMailPool mailPool){
-    	id = "R" + hashCode();
-        // currentState = RobotState.WAITING;
-    	this.currentState = RobotState.RETURNING;
-        this.currentFloor = Building.MAILROOM_LOCATION;
-        this.delivery = delivery;
-        this.mailPool = mailPool;
-        this.receivedDispatch = false;
-        this.deliveryCounter = 0;
-        this.teamMode = false;
-        this.waitCounter = 0;
+    Robot(RobotFleet fleet, int slot, int index) {
+        this.index = index;
+        this.id = "R" + index;
+        this.fleet = fleet;
+        this.slot = slot;
     }
-    
+
     /**
      * This method set a robot's receivedDispatch boolean value to true
      */
     public void dispatch() {
-    	receivedDispatch = true;
+        fleet.dispatch(slot);
     }
 
     /**
@@ -67,149 +70,72 @@ public class Robot implements IMovable{
      */
     @Override
     public void step() {
-        try {
-            switch(currentState) {
-                /** This state is triggered when the robot is returning to the mailroom after a delivery */
-                case RETURNING:
-                    /** If its current position is at the mailroom, then the robot should change state */
-                    if(currentFloor == Building.MAILROOM_LOCATION){
-                        if (tube != null) {
-                            mailPool.addToPool(tube);
-                            System.out.printf("T: %3d > old addToPool [%s]%n", Clock.Time(), tube.toString());
-                            tube = null;
-                        }
-                        /** Tell the sorter the robot is ready */
-                        mailPool.registerWaiting(this);
-                        changeState(RobotState.WAITING);
-                    } else {
-                        /** If the robot is not at the mail room floor yet, then move towards it! */
-                        moveTowards(Building.MAILROOM_LOCATION);
-                        break;
-                    }
-                case WAITING:
-                    /** If the StorageTube is ready and the Robot is waiting in the mail room then start the delivery */
-                    if(!isEmpty() && receivedDispatch){
-                        receivedDispatch = false;
-                        deliveryCounter = 0; // reset delivery counter
-                        setRoute();
-                        changeState(RobotState.DELIVERING);
-                    }
-                    break;
-                case DELIVERING:
-                    if(currentFloor == destinationFloor){ // If already here drop off either way
-
-                        if (mailPool.getRobotsDelivering(deliveryItem) == TeamSize.ONE.getValue()){
-                            /**
-                             * Last robot to deliver this item(as an individual or as a team),
-                             * report this to the simulator!
-                             */
-                            delivery.deliver(deliveryItem);
-                            turnTeamModeOff(); // Turn off team mode and reset waitCounter to zero
-                        } else {
-                            mailPool.removeRobotFromDelivery(deliveryItem);
-                        }
-                        deliveryItem = null;
-                        deliveryCounter++;
-                        if(deliveryCounter > 2){  // Implies a simulation bug
-                            throw new ExcessiveDeliveryException();
-                        }
-                        /** Check if want to return, i.e. if there is no item in the tube*/
-                        if(tube == null){
-                            changeState(RobotState.RETURNING);
-                        }
-                        else{
-                            /** If there is another item, set the robot's route to the location to deliver the item */
-                            deliveryItem = tube;
-                            tube = null;
-                            setRoute();
-                            changeState(RobotState.DELIVERING);
-                        }
-
-
-                    } else {
-                        /** The robot is not at the destination yet, move towards it! */
-                        if (!isTeamModeOn()){
-                            /** Working as an individual */
-                            moveTowards(destinationFloor);
-                        } else {
-                            /** Working as a team. */
-                            if (finishWaiting()){
-                                // Finish waiting and move a step
-                                moveTowards(destinationFloor);
-                                resetWaitCounter(); // reset for the next move
-                            } else {
-                                // Keep waiting
-                                countWait();
-                            }
-                        }
+        fleet.step(slot);
+    }
 
-                    }
-                    break;
-            }
-        }
-        catch (ExcessiveDeliveryException e){
-            e.printStackTrace();
-        }
+    /**
+     * This method gets the number of steps from now on in which the robot only moves or waits.
+     * Nothing else happens to the robot until the step after them.
+     * @return the number of steps before the robot changes state, or Integer.MAX_VALUE
+     * if the robot is waiting for the mail pool
+     */
+    public int getStepsUntilEvent() {
+        return fleet.getStepsUntilEvent(slot);
     }
 
     /**
-     * Sets the route for the robot
+     * This method applies a number of steps in which the robot only moves or waits,
+     * as returned by getStepsUntilEvent, all at once
+     * @param steps the number of steps to skip, no more than getStepsUntilEvent()
      */
-    private void setRoute() {
-        /** Set the destination floor */
-        destinationFloor = deliveryItem.getDestFloor();
+    public void skipSteps(int steps) {
+        fleet.skipSteps(slot, steps);
     }
 
     /**
-     * Generic function that moves the robot towards the destination
-     * @param destination the floor towards which the robot is moving
+     * This method makes the robot keep back the effects of its steps on the mail pool,
+     * the delivery and the log, so that robots can be stepped in parallel
+     * @param defer true to keep effects back until applyDeferredEffects is called
      */
-    private void moveTowards(int destination) {
-        if(currentFloor < destination){
-            currentFloor++;
-        } else {
-            currentFloor--;
-        }
+    public void setDeferEffects(boolean defer) {
+        fleet.setDeferEffects(slot, defer);
     }
-    
-    private String getIdTube() {
-    	return String.format("%s(%1d)", id, (tube == null ? 0 : 1));
+
+    /**
+     * This method applies the effects kept back since it was last called, in the order they happened.
+     * Robots must be applied in the same order they would be stepped in.
+     */
+    public void applyDeferredEffects() {
+        fleet.applyDeferredEffects(slot);
     }
-    
+
     /**
-     * Prints out the change in state
-     * @param nextState the state to which the robot is transitioning
+     * This method gets the state the robot is in
+     * @return the current state of the robot
      */
-    private void changeState(RobotState nextState){
-    	assert(!(deliveryItem == null && tube != null));
-    	if (currentState != nextState) {
-    		// Example: R(1) means tube is also filled before delivery
-            System.out.printf("T: %3d > %7s changed from %s to %s%n",
-                    Clock.Time(), getIdTube(), currentState, nextState);
-    	}
-    	currentState = nextState;
-    	if(nextState == RobotState.DELIVERING){
-            System.out.printf("T: %3d > %7s-> [%s]%n", Clock.Time(), getIdTube(), deliveryItem.toString());
-    	}
+    public RobotState getCurrentState() {
+        return fleet.getState(slot);
     }
 
 	public MailItem getTube() {
-		return tube;
+		return fleet.getTube(slot);
 	}
-    
-	private static int count = 0;
-	private static Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
 
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
-		return hash;
+		return index;
 	}
 
+    /**
+     * This method gets the position of the robot in the fleet
+     * @return the index of the robot, starting at 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
 	public boolean isEmpty() {
-		return (deliveryItem == null && tube == null);
+		return fleet.isEmpty(slot);
 	}
 
     /**
@@ -219,13 +145,7 @@ public class Robot implements IMovable{
      * @throws ItemTooHeavyException
      */
 	public void addToHand(MailItem mailItem) throws ItemTooHeavyException {
-		assert(deliveryItem == null);
-		deliveryItem = mailItem;
-        /**
-         * Adjust the max. weight a robot's hand can carry
-         * based on the team capacity and number of robots in the mail pool
-         */
-		if (deliveryItem.getWeight() > mailPool.getSysMaxWeight()) throw new ItemTooHeavyException();
+		fleet.addToHand(slot, mailItem);
 	}
 
     /**
@@ -235,9 +155,7 @@ public class Robot implements IMovable{
      * @throws ItemTooHeavyException
      */
 	public void addToTube(MailItem mailItem) throws ItemTooHeavyException {
-		assert(tube == null);
-		tube = mailItem;
-		if (tube.getWeight() > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
+		fleet.addToTube(slot, mailItem);
 	}
 
     /**
@@ -245,23 +163,14 @@ public class Robot implements IMovable{
      * @return true if the robot is in a team. false is the robot is working individually
      */
 	public boolean getTeamMode(){  // Not used in this version. Good practice to keep a getter
-	    return teamMode;
+	    return fleet.isTeamModeOn(slot);
     }
 
     /**
      * This method turns on the team mode of a robot
      */
     public void turnTeamModeOn(){
-	    teamMode = true;
-    }
-
-    /**
-     * This method turns off the team mode of a robot after
-     * a robot finishes delivering as a team with its hand
-     */
-    private void turnTeamModeOff(){
-	    teamMode = false;
-	    resetWaitCounter();
+	    fleet.turnTeamModeOn(slot);
     }
 
     /**
@@ -270,7 +179,7 @@ public class Robot implements IMovable{
      * <b>false</b> if the robot is delivering as an individual.
      */
     public boolean isTeamModeOn(){
-	    return teamMode == true;
+	    return fleet.isTeamModeOn(slot);
     }
 
     /**
@@ -278,30 +187,7 @@ public class Robot implements IMovable{
      * @return The amount of time a robot has been waiting in a team before the next move
      */
     public int getWaitCounter(){ // Not used in this version. Good practice to keep a getter
-	    return waitCounter;
-    }
-
-    /**
-     * This method checks whether a robot, working in a team, finishes waiting
-     * and is ready for the next move
-     */
-    private boolean finishWaiting(){
-        return waitCounter == 2;
-    }
-
-    /**
-     * This method adds the wait counter by one unit of time.
-     */
-    private void countWait(){
-        waitCounter++;
-    }
-
-    /**
-     * This method resets the wait counter to 0
-     * when a robot switches from team mode to individual mode
-     */
-    private void resetWaitCounter(){
-	    waitCounter = 0;
+	    return fleet.getWaitCounter(slot);
     }
 
 }
@@ -0,0 +1,582 @@
+package automail;
+
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+import util.Checkpoint;
+import util.EventLog;
+import util.FlightRecording;
+import util.RobotStateEvent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import automail.Robot.RobotState;
+
+/**
+ * A RobotFleet holds the state of a fleet of robots in parallel arrays, one entry per robot,
+ * and steps the robots by looping over those arrays.<br/><br/>
+ *
+ * Each robot of the fleet is also a {@link Robot}, which reads and changes its entry of the arrays,
+ * so the mail pool and other callers of the Robot API work as before.
+ * Stepping the fleet gives the same results as stepping each Robot in order.
+ */
+public class RobotFleet {
+
+    /** State codes, the ordinals of RobotState */
+    private static final byte DELIVERING = 0;
+    private static final byte WAITING = 1;
+    private static final byte RETURNING = 2;
+    private static final RobotState[] STATES = RobotState.values();
+
+    private final int size;
+    private final IMailDelivery delivery;
+    private final IMailPool mailPool;
+    private final Clock clock;
+    private final EventLog eventLog;
+
+    /** The robots of the fleet, as Robots */
+    private final Robot[] robots;
+    /** The index of the first robot of the fleet in the whole fleet */
+    private final int firstIndex;
+
+    private final byte[] state;
+    private final int[] currentFloor;
+    private final int[] destinationFloor;
+    private final MailItem[] deliveryItem;
+    private final MailItem[] tube;
+    private final boolean[] receivedDispatch;
+    /** true for working as a team, false for working as an individual */
+    private final boolean[] teamMode;
+    /** The number of units of time waited before moving a step, in team mode */
+    private final int[] waitCounter;
+    private final int[] deliveryCounter;
+
+    /**
+     * Effects of a step on the mail pool, the delivery and the log, kept back
+     * until applyDeferredEffects is called. Null for a robot whose effects happen straight away.
+     */
+    private final List<Runnable>[] deferredEffects;
+
+    /**
+     * Initiates every robot of the fleet at the mailroom, returning to wait for mail.
+     * @param size the number of robots
+     * @param delivery governs the final delivery
+     * @param mailPool is the source of mail items
+     * @param clock the clock of the Simulation
+     * @param eventLog records the changes in state of the robots
+     */
+    public RobotFleet(int size, IMailDelivery delivery, IMailPool mailPool, Clock clock, EventLog eventLog) {
+        this(0, size, delivery, mailPool, clock, eventLog);
+        for (int i = 0; i < size; i++) {
+            robots[i] = new Robot(this, i, i);
+        }
+    }
+
+    /**
+     * Initiates the robots without making a Robot for each, which the caller must do with adopt
+     * @param firstIndex the index of the first robot in the whole fleet
+     */
+    RobotFleet(int firstIndex, int size, IMailDelivery delivery, IMailPool mailPool, Clock clock, EventLog eventLog) {
+        this.size = size;
+        this.delivery = delivery;
+        this.mailPool = mailPool;
+        this.clock = clock;
+        this.eventLog = eventLog;
+        this.robots = new Robot[size];
+        this.firstIndex = firstIndex;
+        this.state = new byte[size];
+        this.currentFloor = new int[size];
+        this.destinationFloor = new int[size];
+        this.deliveryItem = new MailItem[size];
+        this.tube = new MailItem[size];
+        this.receivedDispatch = new boolean[size];
+        this.teamMode = new boolean[size];
+        this.waitCounter = new int[size];
+        this.deliveryCounter = new int[size];
+        this.deferredEffects = newEffectLists(size);
+        for (int i = 0; i < size; i++) {
+            state[i] = RETURNING;
+            currentFloor[i] = Building.MAILROOM_LOCATION;
+        }
+    }
+
+    /**
+     * @return an array of lists of effects for a fleet of a size, with no lists in it yet
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Runnable>[] newEffectLists(int size) {
+        return (List<Runnable>[]) new List<?>[size];
+    }
+
+    /**
+     * A fork of a fleet, with copies of the state of its robots and a fork of its mail pool
+     * that holds the robots of the fork. No effects are kept back in the fork.
+     * @param fleet the fleet forked, between steps
+     * @param delivery governs the final delivery in the fork
+     * @param clock the clock of the fork
+     * @param eventLog the event log of the fork
+     */
+    private RobotFleet(RobotFleet fleet, IMailDelivery delivery, Clock clock, EventLog eventLog) {
+        this.size = fleet.size;
+        this.delivery = delivery;
+        this.clock = clock;
+        this.eventLog = eventLog;
+        this.firstIndex = fleet.firstIndex;
+        this.state = fleet.state.clone();
+        this.currentFloor = fleet.currentFloor.clone();
+        this.destinationFloor = fleet.destinationFloor.clone();
+        this.deliveryItem = fleet.deliveryItem.clone();
+        this.tube = fleet.tube.clone();
+        this.receivedDispatch = fleet.receivedDispatch.clone();
+        this.teamMode = fleet.teamMode.clone();
+        this.waitCounter = fleet.waitCounter.clone();
+        this.deliveryCounter = fleet.deliveryCounter.clone();
+        this.deferredEffects = newEffectLists(size);
+        this.robots = new Robot[size];
+        for (int i = 0; i < size; i++) {
+            robots[i] = new Robot(this, i, firstIndex + i);
+        }
+        this.mailPool = fleet.mailPool.fork(robots, clock, eventLog);
+    }
+
+    /**
+     * This method forks the fleet and its mail pool for a fork of the Simulation.
+     * Changes to either do not show in the other.
+     * @param delivery governs the final delivery in the fork
+     * @param clock the clock of the fork
+     * @param eventLog the event log of the fork
+     * @return the fork, whose mail pool is given by getMailPool
+     */
+    public RobotFleet fork(IMailDelivery delivery, Clock clock, EventLog eventLog) {
+        return new RobotFleet(this, delivery, clock, eventLog);
+    }
+
+    /**
+     * @return the mail pool the robots of the fleet load from
+     */
+    public IMailPool getMailPool() {
+        return mailPool;
+    }
+
+    /**
+     * Makes a Robot the one of a slot of the fleet
+     */
+    void adopt(int slot, Robot robot) {
+        robots[slot] = robot;
+    }
+
+    /**
+     * @return the number of robots in the fleet
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param slot the position of the robot in the fleet
+     * @return the robot as a Robot
+     */
+    public Robot getRobot(int slot) {
+        return robots[slot];
+    }
+
+    /**
+     * @return the robots as Robots, in the order they are stepped
+     */
+    public Robot[] getRobots() {
+        return robots;
+    }
+
+    /**
+     * This method counts the robots in a state. It may be called from another thread while
+     * the fleet is stepped, in which case the count is only as exact as a glance at the robots.
+     * @param robotState the state to count
+     * @return the number of robots in that state
+     */
+    public int countRobots(RobotState robotState) {
+        byte code = (byte) robotState.ordinal();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (state[i] == code) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method steps every robot of the fleet once, in order
+     */
+    public void step() {
+        for (int i = 0; i < size; i++) {
+            step(i);
+        }
+    }
+
+    /**
+     * This method gets the number of steps from now on in which every robot only moves or waits
+     * @return the fewest steps before a robot changes state, or Integer.MAX_VALUE
+     * if every robot is waiting for the mail pool
+     */
+    public int getStepsUntilEvent() {
+        int steps = Integer.MAX_VALUE;
+        for (int i = 0; i < size && steps > 0; i++) {
+            steps = Math.min(steps, getStepsUntilEvent(i));
+        }
+        return steps;
+    }
+
+    /**
+     * This method applies a number of steps in which every robot only moves or waits
+     * @param steps the number of steps to skip, no more than getStepsUntilEvent()
+     */
+    public void skipSteps(int steps) {
+        for (int i = 0; i < size; i++) {
+            skipSteps(i, steps);
+        }
+    }
+
+    /**
+     * This method makes every robot keep back the effects of its steps on the mail pool,
+     * the delivery and the log, so that robots can be stepped in parallel
+     * @param defer true to keep effects back until applyDeferredEffects is called
+     */
+    public void setDeferEffects(boolean defer) {
+        for (int i = 0; i < size; i++) {
+            setDeferEffects(i, defer);
+        }
+    }
+
+    /**
+     * This method applies the effects kept back by every robot, robot by robot in order
+     */
+    public void applyDeferredEffects() {
+        for (int i = 0; i < size; i++) {
+            applyDeferredEffects(i);
+        }
+    }
+
+    /**
+     * This method writes the state of every robot to a checkpoint, between steps.
+     * Effects kept back are not written, so they must all have been applied.
+     * @param out where to write
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeByte(state[i]);
+            out.writeInt(currentFloor[i]);
+            out.writeInt(destinationFloor[i]);
+            Checkpoint.writeMailItem(out, deliveryItem[i]);
+            Checkpoint.writeMailItem(out, tube[i]);
+            out.writeBoolean(receivedDispatch[i]);
+            out.writeBoolean(teamMode[i]);
+            out.writeInt(waitCounter[i]);
+            out.writeInt(deliveryCounter[i]);
+        }
+    }
+
+    /**
+     * This method restores the state of every robot written by writeState
+     * @param in where to read
+     * @throws IOException if the checkpoint is of a fleet of another size
+     */
+    public void readState(DataInput in) throws IOException {
+        int robots = in.readInt();
+        if (robots != size) {
+            throw new IOException("The checkpoint has " + robots + " robots, not " + size);
+        }
+        for (int i = 0; i < size; i++) {
+            state[i] = in.readByte();
+            currentFloor[i] = in.readInt();
+            destinationFloor[i] = in.readInt();
+            deliveryItem[i] = Checkpoint.readMailItem(in);
+            tube[i] = Checkpoint.readMailItem(in);
+            receivedDispatch[i] = in.readBoolean();
+            teamMode[i] = in.readBoolean();
+            waitCounter[i] = in.readInt();
+            deliveryCounter[i] = in.readInt();
+        }
+    }
+
+    /**
+     * Steps one robot
+     * @see Robot#step()
+     */
+    void step(int i) {
+        try {
+            switch(state[i]) {
+                /** This state is triggered when the robot is returning to the mailroom after a delivery */
+                case RETURNING:
+                    /** If its current position is at the mailroom, then the robot should change state */
+                    if(currentFloor[i] == Building.MAILROOM_LOCATION){
+                        if (tube[i] != null) {
+                            MailItem returnedItem = tube[i];
+                            if (isDeferred(i)) {
+                                defer(i, () -> returnToPool(returnedItem));
+                            } else {
+                                returnToPool(returnedItem);
+                            }
+                            tube[i] = null;
+                        }
+                        /** Tell the sorter the robot is ready */
+                        Robot robot = robots[i];
+                        if (isDeferred(i)) {
+                            defer(i, () -> mailPool.registerWaiting(robot));
+                        } else {
+                            mailPool.registerWaiting(robot);
+                        }
+                        changeState(i, WAITING);
+                    } else {
+                        /** If the robot is not at the mail room floor yet, then move towards it! */
+                        moveTowards(i, Building.MAILROOM_LOCATION);
+                        break;
+                    }
+                case WAITING:
+                    /** If the StorageTube is ready and the Robot is waiting in the mail room then start the delivery */
+                    if(!isEmpty(i) && receivedDispatch[i]){
+                        receivedDispatch[i] = false;
+                        deliveryCounter[i] = 0; // reset delivery counter
+                        setRoute(i);
+                        changeState(i, DELIVERING);
+                    }
+                    break;
+                case DELIVERING:
+                    if(currentFloor[i] == destinationFloor[i]){ // If already here drop off either way
+
+                        MailItem deliveredItem = deliveryItem[i];
+                        if (isDeferred(i)) {
+                            defer(i, () -> dropOff(i, deliveredItem));
+                        } else {
+                            dropOff(i, deliveredItem);
+                        }
+                        deliveryItem[i] = null;
+                        deliveryCounter[i]++;
+                        if(deliveryCounter[i] > 2){  // Implies a simulation bug
+                            throw new ExcessiveDeliveryException();
+                        }
+                        /** Check if want to return, i.e. if there is no item in the tube*/
+                        if(tube[i] == null){
+                            changeState(i, RETURNING);
+                        }
+                        else{
+                            /** If there is another item, set the robot's route to the location to deliver the item */
+                            deliveryItem[i] = tube[i];
+                            tube[i] = null;
+                            setRoute(i);
+                            changeState(i, DELIVERING);
+                        }
+
+                    } else {
+                        /** The robot is not at the destination yet, move towards it! */
+                        if (!teamMode[i]){
+                            /** Working as an individual */
+                            moveTowards(i, destinationFloor[i]);
+                        } else if (waitCounter[i] == 2){
+                            /** Working as a team, finish waiting and move a step */
+                            moveTowards(i, destinationFloor[i]);
+                            waitCounter[i] = 0; // reset for the next move
+                        } else {
+                            /** Working as a team, keep waiting */
+                            waitCounter[i]++;
+                        }
+                    }
+                    break;
+            }
+        }
+        catch (ExcessiveDeliveryException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @see Robot#getStepsUntilEvent()
+     */
+    int getStepsUntilEvent(int i) {
+        switch(state[i]) {
+            case RETURNING:
+                return Math.abs(currentFloor[i] - Building.MAILROOM_LOCATION);
+            case WAITING:
+                return (!isEmpty(i) && receivedDispatch[i]) ? 0 : Integer.MAX_VALUE;
+            case DELIVERING:
+                int floors = Math.abs(currentFloor[i] - destinationFloor[i]);
+                if (!teamMode[i] || floors == 0) {
+                    return floors;
+                }
+                // A team waits until the wait counter reaches 2, then moves and starts counting again
+                return 3 * floors - waitCounter[i];
+        }
+        return 0;
+    }
+
+    /**
+     * @see Robot#skipSteps(int)
+     */
+    void skipSteps(int i, int steps) {
+        assert(steps <= getStepsUntilEvent(i));
+        switch(state[i]) {
+            case RETURNING:
+                moveTowards(i, Building.MAILROOM_LOCATION, steps);
+                break;
+            case WAITING:
+                break;
+            case DELIVERING:
+                if (!teamMode[i]) {
+                    moveTowards(i, destinationFloor[i], steps);
+                } else if (steps < 3 - waitCounter[i]) {
+                    waitCounter[i] += steps;
+                } else {
+                    int stepsAfterFirstMove = steps - (3 - waitCounter[i]);
+                    moveTowards(i, destinationFloor[i], 1 + stepsAfterFirstMove / 3);
+                    waitCounter[i] = stepsAfterFirstMove % 3;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Puts a mail item brought back in the tube back in the mail pool
+     */
+    private void returnToPool(MailItem mailItem) {
+        mailPool.addToPool(mailItem);
+        eventLog.returned(clock.Time(), mailItem);
+    }
+
+    /**
+     * Drops off a mail item at its destination floor
+     */
+    private void dropOff(int i, MailItem mailItem) {
+        int robotsDelivering = mailPool.getRobotsDelivering(mailItem);
+        mailPool.removeRobotFromDelivery(mailItem);
+        if (robotsDelivering == TeamSize.ONE.getValue()){
+            /**
+             * Last robot to deliver this item(as an individual or as a team),
+             * report this to the simulator!
+             */
+            delivery.deliver(mailItem);
+            // Turn off team mode and reset waitCounter to zero
+            teamMode[i] = false;
+            waitCounter[i] = 0;
+        }
+    }
+
+    void setDeferEffects(int i, boolean defer) {
+        deferredEffects[i] = defer ? new ArrayList<>() : null;
+    }
+
+    void applyDeferredEffects(int i) {
+        for (Runnable effect : deferredEffects[i]) {
+            effect.run();
+        }
+        deferredEffects[i].clear();
+    }
+
+    /**
+     * Checks whether the effects of the steps of a robot are kept back. The callers apply an effect
+     * straight away when they are not, so the serial path makes no Runnable for it.
+     */
+    private boolean isDeferred(int i) {
+        return deferredEffects[i] != null;
+    }
+
+    /**
+     * Keeps back an effect of a step until applyDeferredEffects
+     */
+    private void defer(int i, Runnable effect) {
+        deferredEffects[i].add(effect);
+    }
+
+    private void setRoute(int i) {
+        destinationFloor[i] = deliveryItem[i].getDestFloor();
+    }
+
+    private void moveTowards(int i, int destination) {
+        if(currentFloor[i] < destination){
+            currentFloor[i]++;
+        } else {
+            currentFloor[i]--;
+        }
+    }
+
+    private void moveTowards(int i, int destination, int floors) {
+        if(currentFloor[i] < destination){
+            currentFloor[i] += floors;
+        } else {
+            currentFloor[i] -= floors;
+        }
+    }
+
+    /**
+     * Records the change in state
+     */
+    private void changeState(int i, byte nextState){
+        assert(!(deliveryItem[i] == null && tube[i] != null));
+        int tubeCount = (tube[i] == null ? 0 : 1);
+        int robot = firstIndex + i;
+        if (state[i] != nextState) {
+            RobotState fromState = STATES[state[i]];
+            RobotState toState = STATES[nextState];
+            if (isDeferred(i)) {
+                defer(i, () -> eventLog.stateChange(clock.Time(), robot, tubeCount, fromState, toState));
+            } else {
+                eventLog.stateChange(clock.Time(), robot, tubeCount, fromState, toState);
+            }
+            if (FlightRecording.isOn() && RobotStateEvent.isTypeEnabled()) {
+                new RobotStateEvent().commit(clock.Time(), robot, tubeCount, fromState, toState);
+            }
+        }
+        state[i] = nextState;
+        if(nextState == DELIVERING){
+            MailItem dispatchedItem = deliveryItem[i];
+            if (isDeferred(i)) {
+                defer(i, () -> eventLog.dispatch(clock.Time(), robot, tubeCount, dispatchedItem));
+            } else {
+                eventLog.dispatch(clock.Time(), robot, tubeCount, dispatchedItem);
+            }
+        }
+    }
+
+    void dispatch(int i) {
+        receivedDispatch[i] = true;
+    }
+
+    RobotState getState(int i) {
+        return STATES[state[i]];
+    }
+
+    MailItem getTube(int i) {
+        return tube[i];
+    }
+
+    boolean isEmpty(int i) {
+        return deliveryItem[i] == null && tube[i] == null;
+    }
+
+    void addToHand(int i, MailItem mailItem) throws ItemTooHeavyException {
+        assert(deliveryItem[i] == null);
+        deliveryItem[i] = mailItem;
+        if (mailItem.getWeight() > mailPool.getSysMaxWeight()) throw new ItemTooHeavyException();
+    }
+
+    void addToTube(int i, MailItem mailItem) throws ItemTooHeavyException {
+        assert(tube[i] == null);
+        tube[i] = mailItem;
+        if (mailItem.getWeight() > Robot.INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
+    }
+
+    boolean isTeamModeOn(int i) {
+        return teamMode[i];
+    }
+
+    void turnTeamModeOn(int i) {
+        teamMode[i] = true;
+    }
+
+    int getWaitCounter(int i) {
+        return waitCounter[i];
+    }
+}
@@ -0,0 +1,566 @@
+package automail;
+
+import exceptions.ItemTooHeavyException;
+import strategies.Automail;
+import strategies.IMailPool;
+import strategies.IndexedMailPool;
+import strategies.MailPool;
+import util.Checkpoint;
+import util.CheckpointWriter;
+import util.Configuration;
+import util.DeliveryMetrics;
+import util.EventLog;
+import util.FlightRecording;
+import util.IMailSource;
+import util.MailGenerator;
+import util.MailLogReplay;
+import util.ReportDelivery;
+import util.TickEvent;
+import util.TraceRecorder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A SimulationEngine runs one simulation of AutoMail.<br/><br/>
+ *
+ * It owns all the state of the run: the clock, the building, the mail pool, the robots,
+ * the mail source, the delivery report and the event log. Engines share nothing,
+ * so several of them can run at the same time on different threads of one JVM.<br/><br/>
+ *
+ * With Checkpoint_File set it writes a {@link Checkpoint} of that state every Checkpoint_Interval
+ * units of time, and with Resume_From set it carries on from one instead of starting at time 0.
+ * A resumed run writes the events after the checkpoint and the same delivery report
+ * as the run that wrote it.<br/><br/>
+ *
+ * Instead of run, a caller may start the simulation and step it one unit of time at a time.
+ * Between steps it can fork the simulation into an independent copy, which can be run ahead
+ * to see where the simulation would go without changing it. A fork shares what neither side
+ * changes, such as the mail items generated up front and the buckets of an IndexedMailPool,
+ * so forking costs about as much as copying the state of the robots.<br/><br/>
+ *
+ * An engine holds threads, files and an MBean from the time it is made. run and finish release them;
+ * a simulation left before it finishes is released with close, e.g. in a try-with-resources.
+ */
+public class SimulationEngine implements AutoCloseable {
+
+	private final Building building;
+	private final Clock clock;
+	private final EventLog eventLog;
+	private final IMailPool mailPool;
+	private final ReportDelivery delivery;
+	private final Automail automail;
+	private final RobotFleet fleet;
+	private final IMailSource mailGenerator;
+	/** The live numbers of the simulation, or null in a fork */
+	private final DeliveryMetrics metrics;
+
+	/** Steps the robots in parallel, or null to step them one after another */
+	private final ForkJoinPool robotStepPool;
+	/** Jumps over the units of time in which nothing but robot movement happens */
+	private final boolean skipIdleTicks;
+
+	/** Writes the checkpoints in the background, or null to write none */
+	private final CheckpointWriter checkpointWriter;
+	/** The number of units of time from one checkpoint to the next */
+	private final int checkpointInterval;
+	/** The time from which the next checkpoint is written */
+	private int nextCheckpoint;
+	/** The size of the last checkpoint, to size the buffer of the next */
+	private int lastCheckpointSize = 1 << 16;
+	/** The checkpoint to resume from, or null to start at time 0 */
+	private final String resumeFrom;
+	/** The properties a checkpoint is written with, which must be the same to resume from it */
+	private final String checkpointConfiguration;
+
+	/** true once the mail is generated or restored from a checkpoint */
+	private boolean started;
+
+	/**
+	 * Sets up a simulation that writes its events to stdout
+	 * @param configuration the properties of the simulation
+	 */
+	public SimulationEngine(Configuration configuration) {
+		this(configuration, System.out);
+	}
+
+	/**
+	 * Sets up a simulation
+	 * @param configuration the properties of the simulation
+	 * @param out where the events of the simulation are written, at the configured Log_Level
+	 */
+	public SimulationEngine(Configuration configuration, OutputStream out) {
+		int robots = configuration.getIntProperty("Robots");
+		if (robots < 0) {
+			throw new IllegalArgumentException("Robots must not be negative, not " + robots);
+		}
+		String mailPoolName = configuration.getProperty("MailPool");
+		if (!mailPoolName.equals(IndexedMailPool.class.getName()) && !mailPoolName.equals(MailPool.class.getName())) {
+			throw new IllegalArgumentException("MailPool must be " + IndexedMailPool.class.getName()
+					+ " or " + MailPool.class.getName() + ", not " + mailPoolName);
+		}
+		String engine = configuration.getProperty("Engine");
+		if (engine != null && !engine.isEmpty() && !"TICK".equalsIgnoreCase(engine) && !"EVENT".equalsIgnoreCase(engine)) {
+			throw new IllegalArgumentException("Engine must be TICK or EVENT, not " + engine);
+		}
+		this.building = new Building(configuration.getIntProperty("Floors"));
+		this.clock = new Clock(configuration.getIntProperty("Last_Delivery_Time"));
+
+		// Threads and files made so far, released if a later property is wrong
+		TraceRecorder trace = null;
+		EventLog eventLog = null;
+		ForkJoinPool robotStepPool = null;
+		CheckpointWriter checkpointWriter = null;
+		try {
+			/** Trace_File also records every event in a binary trace */
+			String traceFile = configuration.getProperty("Trace_File");
+			if (traceFile != null && !traceFile.isEmpty()) {
+				try {
+					trace = new TraceRecorder(traceFile, configuration.getIntProperty("Trace_Segment_MB"));
+				} catch (IOException e) {
+					throw new UncheckedIOException("Could not create trace " + traceFile, e);
+				}
+			}
+			eventLog = new EventLog(EventLog.parseLevel(configuration.getProperty("Log_Level")), out, trace);
+
+			// MailPool
+			if (mailPoolName.equals(MailPool.class.getName())) {
+				this.mailPool = new MailPool(new LinkedList<>(), new LinkedList<>(), robots, clock, eventLog);
+			} else {
+				this.mailPool = new IndexedMailPool(new LinkedList<>(), robots, clock, eventLog);
+			}
+			this.delivery = new ReportDelivery(clock, eventLog);
+
+			this.fleet = new RobotFleet(robots, delivery, mailPool, clock, eventLog);
+			this.automail = new Automail(mailPool, fleet.getRobots());
+
+			this.metrics = new DeliveryMetrics(clock);
+			metrics.observe(fleet);
+			delivery.setMetrics(metrics);
+			mailPool.setMetrics(metrics);
+
+			/** Used to see whether a seed is initialized or not */
+			HashMap<Boolean, Integer> seedMap = new HashMap<>();
+			String seedProp = configuration.getProperty("Seed");
+			if (seedProp == null) { // no property
+				seedMap.put(false, 0); // so randomise
+			} else {
+				seedMap.put(true, Integer.parseInt(seedProp));
+			}
+			/** Mail_Log replays the arrivals of a log instead of generating random mail */
+			String mailLog = configuration.getProperty("Mail_Log");
+			if (mailLog != null && !mailLog.isEmpty()) {
+				try {
+					this.mailGenerator = new MailLogReplay(mailLog, mailPool, building, clock, eventLog);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Could not open mail log " + mailLog, e);
+				}
+			} else {
+				this.mailGenerator = new MailGenerator(
+						configuration.getIntProperty("Mail_to_Create"), configuration.getIntProperty("Mail_Max_Weight"),
+						mailPool, seedMap, building, clock, eventLog,
+						MailGenerator.Generation.valueOf(configuration.getProperty("Mail_Generation").toUpperCase()),
+						configuration.getIntProperty("Mail_Generation_Threads"));
+			}
+
+			/** Robot_Threads above 1 steps the robots in parallel on a fork-join pool */
+			int robotThreads = configuration.getIntProperty("Robot_Threads");
+			if (robotThreads > 1) {
+				robotStepPool = new ForkJoinPool(robotThreads);
+				fleet.setDeferEffects(true);
+			}
+
+			/** Checkpoint_File writes a checkpoint every Checkpoint_Interval units of time */
+			String checkpointFile = configuration.getProperty("Checkpoint_File");
+			this.checkpointInterval = configuration.getIntProperty("Checkpoint_Interval");
+			if (checkpointFile != null && !checkpointFile.isEmpty()) {
+				if (checkpointInterval <= 0) {
+					throw new IllegalArgumentException("Checkpoint_Interval must be at least 1, not " + checkpointInterval);
+				}
+				checkpointWriter = new CheckpointWriter(checkpointFile);
+			}
+			this.nextCheckpoint = checkpointInterval;
+			/** Resume_From carries on from a checkpoint */
+			String resume = configuration.getProperty("Resume_From");
+			this.resumeFrom = resume == null || resume.isEmpty() ? null : resume;
+			this.checkpointConfiguration = "Robots=" + robots
+					+ ";Floors=" + building.FLOORS
+					+ ";Last_Delivery_Time=" + clock.LAST_DELIVERY_TIME
+					+ ";MailPool=" + mailPool.getClass().getName()
+					+ ";Mail_Log=" + (mailLog == null ? "" : mailLog)
+					+ ";Mail_Generation=" + configuration.getProperty("Mail_Generation").toUpperCase();
+		} catch (RuntimeException | Error e) {
+			if (eventLog != null) {
+				eventLog.close();
+			} else if (trace != null) {
+				trace.close();
+			}
+			if (robotStepPool != null) {
+				robotStepPool.shutdown();
+			}
+			if (checkpointWriter != null) {
+				checkpointWriter.close();
+			}
+			throw e;
+		}
+		this.eventLog = eventLog;
+		this.robotStepPool = robotStepPool;
+		this.checkpointWriter = checkpointWriter;
+		/** Engine=EVENT jumps over the units of time in which nothing but robot movement happens */
+		this.skipIdleTicks = "EVENT".equalsIgnoreCase(engine);
+
+		/** Metrics_JMX publishes the metrics as a platform MBean of that name */
+		String metricsName = configuration.getProperty("Metrics_JMX");
+		if (metricsName != null && !metricsName.isEmpty()) {
+			metrics.register(metricsName);
+		}
+	}
+
+	/**
+	 * A fork of a simulation, between steps. It records no events, keeps no metrics, writes no checkpoints,
+	 * and steps its robots one after another, which gives the same results.
+	 * @param engine the simulation forked
+	 */
+	private SimulationEngine(SimulationEngine engine) {
+		this.building = engine.building;
+		this.clock = new Clock(engine.clock);
+		this.eventLog = EventLog.NONE;
+		this.delivery = engine.delivery.fork(clock, eventLog);
+		this.fleet = engine.fleet.fork(delivery, clock, eventLog);
+		this.mailPool = fleet.getMailPool();
+		this.automail = new Automail(mailPool, fleet.getRobots());
+		this.mailGenerator = engine.mailGenerator.fork(mailPool, clock, eventLog);
+		this.metrics = null;
+		this.robotStepPool = null;
+		this.skipIdleTicks = engine.skipIdleTicks;
+		this.checkpointWriter = null;
+		this.checkpointInterval = engine.checkpointInterval;
+		this.resumeFrom = null;
+		this.checkpointConfiguration = engine.checkpointConfiguration;
+		this.started = true;
+	}
+
+	/**
+	 * This method runs the simulation until every mail item is delivered or rejected.
+	 * All events are written out before it returns.
+	 * If the thread running it is interrupted, e.g. by cancelling its Future, it stops between steps.
+	 * @return the final time, score and mail counts of the simulation
+	 * @throws ItemTooHeavyException if a robot is loaded with an item it cannot carry
+	 * @throws CancellationException if the thread is interrupted before the simulation is complete
+	 */
+	public SimulationResult run() throws ItemTooHeavyException {
+		try {
+			start();
+			while (!isComplete()) {
+				checkInterrupted();
+				step();
+			}
+		} catch (Throwable e) {
+			close();
+			throw e;
+		}
+		return finish();
+	}
+
+	/**
+	 * This method generates the mail, or restores the simulation from Resume_From,
+	 * unless it has already been done
+	 */
+	public void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+		if (resumeFrom == null) {
+			/** Initiate all the mail */
+			mailGenerator.generateAllMail();
+		} else {
+			readCheckpoint(resumeFrom);
+		}
+	}
+
+	/**
+	 * This method checks whether every mail item has been delivered or rejected
+	 * @return true once the simulation is complete
+	 */
+	public boolean isComplete() {
+		return mailGenerator.getMailCreated() ==
+				delivery.getNumOfMailDelivered() + mailPool.getNumOfMailItemRejected();
+	}
+
+	/**
+	 * This method runs one unit of time of the simulation, or with Engine=EVENT,
+	 * jumps to the next unit of time in which something happens and runs it
+	 * @throws ItemTooHeavyException if a robot is loaded with an item it cannot carry
+	 */
+	public void step() throws ItemTooHeavyException {
+		start();
+		TickEvent event = FlightRecording.beginTick();
+		int fromTime = clock.Time();
+		if (checkpointWriter != null && clock.Time() >= nextCheckpoint) {
+			writeCheckpoint();
+		}
+
+		if (skipIdleTicks) {
+			skipIdleTicks();
+		}
+
+		/** Add mail items to the pool */
+		mailGenerator.step();
+
+		/** Load mail items to the robots */
+		mailPool.step();
+
+		/** Move the robots */
+		if (robotStepPool == null) {
+			fleet.step();
+		} else {
+			stepRobotsInParallel();
+		}
+		clock.Tick();
+		if (event != null) {
+			event.commit(fromTime, clock.Time(), delivery.getNumOfMailDelivered());
+		}
+	}
+
+	/**
+	 * This method runs the simulation for a number of units of time, or until it is complete
+	 * @param ticks the number of units of time to run for
+	 * @return the time, score and mail counts of the simulation so far
+	 * @throws ItemTooHeavyException if a robot is loaded with an item it cannot carry
+	 * @throws CancellationException if the thread is interrupted before the units of time are run
+	 */
+	public SimulationResult runFor(int ticks) throws ItemTooHeavyException {
+		start();
+		int end = clock.Time() + ticks;
+		while (clock.Time() < end && !isComplete()) {
+			checkInterrupted();
+			step();
+		}
+		return getResult();
+	}
+
+	/**
+	 * This method stops a run whose thread has been interrupted. The interrupt is left set for the caller.
+	 */
+	private void checkInterrupted() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Simulation interrupted at time " + clock.Time());
+		}
+	}
+
+	/**
+	 * This method makes an independent copy of the simulation between steps, starting it first if need be.
+	 * The fork can be stepped or run ahead without changing this simulation, and the other way round.
+	 * @return the fork
+	 */
+	public SimulationEngine fork() {
+		start();
+		return new SimulationEngine(this);
+	}
+
+	/**
+	 * This method ends a simulation that was stepped by the caller, and writes out all its events
+	 * @return the final time, score and mail counts of the simulation
+	 */
+	public SimulationResult finish() {
+		try {
+			eventLog.end(clock.Time());
+		} finally {
+			close();
+		}
+		return getResult();
+	}
+
+	/**
+	 * This method gets the time, score and mail counts of the simulation so far
+	 * @return the result of the simulation up to now
+	 */
+	public SimulationResult getResult() {
+		return new SimulationResult(clock.Time(), delivery.getTotalScore(), mailGenerator.getMailCreated(),
+				delivery.getNumOfMailDelivered(), mailPool.getNumOfMailItemRejected());
+	}
+
+	/**
+	 * This method writes out the remaining events and releases the threads, files and MBean of the simulation.
+	 * run and finish call it, so it is only needed for a simulation left before it finishes.
+	 * Calling it again does nothing more.
+	 */
+	@Override
+	public void close() {
+		/** Write out the remaining events before the delivery report */
+		eventLog.close();
+		if (robotStepPool != null) {
+			robotStepPool.shutdown();
+		}
+		if (metrics != null) {
+			metrics.unregister();
+		}
+		if (checkpointWriter != null) {
+			checkpointWriter.close();
+		}
+	}
+
+	/**
+	 * This method gets the live numbers of the simulation, which another thread may read while it runs.
+	 * After a resume they count from the checkpoint on.
+	 * @return the metrics of the simulation, or null for a fork
+	 */
+	public DeliveryMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * This method prints the delivery report of the simulation to stdout
+	 */
+	public void printResults() {
+		delivery.printResults(mailGenerator.getMailCreated(), mailPool.getNumOfMailItemRejected());
+	}
+
+	/**
+	 * This method writes the state of the simulation to memory between two units of time,
+	 * and hands it to the checkpoint writer to put on disk while the simulation goes on
+	 */
+	private void writeCheckpoint() {
+		CheckpointBuffer bytes = new CheckpointBuffer(lastCheckpointSize);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(Checkpoint.MAGIC);
+			out.writeInt(Checkpoint.VERSION);
+			out.writeUTF(checkpointConfiguration);
+			out.writeInt(clock.Time());
+			mailGenerator.writeState(out);
+			mailPool.writeState(out);
+			fleet.writeState(out);
+			delivery.writeState(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write checkpoint", e);
+		}
+		lastCheckpointSize = bytes.size();
+		checkpointWriter.write(bytes.bytes(), bytes.size());
+		nextCheckpoint = clock.Time() + checkpointInterval;
+	}
+
+	/**
+	 * This method restores the state of the simulation from a checkpoint, in place of generating the mail
+	 * @param file the checkpoint
+	 */
+	private void readCheckpoint(String file) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(file)),
+				1 << 16))) {
+			if (in.readInt() != Checkpoint.MAGIC) {
+				throw new IOException(file + " is not a checkpoint");
+			}
+			int version = in.readInt();
+			if (version != Checkpoint.VERSION) {
+				throw new IOException(file + " is a checkpoint of version " + version
+						+ ", but only version " + Checkpoint.VERSION + " can be read");
+			}
+			String written = in.readUTF();
+			if (!written.equals(checkpointConfiguration)) {
+				throw new IOException(file + " was written with " + written + ", not " + checkpointConfiguration);
+			}
+			clock.Advance(in.readInt() - clock.Time());
+			mailGenerator.readState(in);
+			mailPool.readState(in, fleet.getRobots());
+			fleet.readState(in);
+			delivery.readState(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not resume from checkpoint " + file, e);
+		}
+		nextCheckpoint = clock.Time() + checkpointInterval;
+	}
+
+	/**
+	 * A CheckpointBuffer gives the checkpoint writer its bytes without copying them
+	 */
+	private static class CheckpointBuffer extends ByteArrayOutputStream {
+
+		CheckpointBuffer(int size) {
+			super(size);
+		}
+
+		byte[] bytes() {
+			return buf;
+		}
+	}
+
+	/**
+	 * This method steps all robots in parallel, then applies the effects of their steps on
+	 * the mail pool, the delivery and the log one robot at a time in robot order.
+	 * The results are the same as stepping the robots one after another.
+	 */
+	private void stepRobotsInParallel() {
+		robotStepPool.invoke(new RobotStepTask(fleet, 0, fleet.size()));
+		fleet.applyDeferredEffects();
+	}
+
+	/**
+	 * A RobotStepTask steps a range of robots, splitting the range in halves until it is small
+	 */
+	private static class RobotStepTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The number of robots stepped by one task without splitting further */
+		private static final int ROBOTS_PER_TASK = 64;
+
+		private final RobotFleet fleet;
+		private final int from;
+		private final int to;
+
+		RobotStepTask(RobotFleet fleet, int from, int to) {
+			this.fleet = fleet;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= ROBOTS_PER_TASK) {
+				for (int k = from; k < to; k++) {
+					fleet.step(k);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RobotStepTask(fleet, from, middle), new RobotStepTask(fleet, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * This method moves the clock straight to the next unit of time in which something
+	 * other than robot movement happens: a mail arrival, a robot reaching its destination
+	 * or the mail room, or the mail pool being able to load a robot.
+	 * The robots are moved by the skipped units of time on the way.
+	 */
+	private void skipIdleTicks() {
+		if (mailPool.canLoad()) {
+			return;
+		}
+		int ticks = Integer.MAX_VALUE;
+		int nextArrival = mailGenerator.getNextArrivalTime();
+		if (nextArrival >= 0) {
+			ticks = nextArrival - clock.Time();
+		}
+		ticks = Math.min(ticks, fleet.getStepsUntilEvent());
+		// Nothing will ever happen, so leave the clock to tick as it would
+		if (ticks == 0 || ticks == Integer.MAX_VALUE) {
+			return;
+		}
+		fleet.skipSteps(ticks);
+		clock.Advance(ticks);
+	}
+
+}
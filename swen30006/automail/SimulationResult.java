@@ -0,0 +1,62 @@
+package automail;
+
+/**
+ * A SimulationResult holds the outcome of one run of a {@link SimulationEngine}
+ */
+public class SimulationResult {
+
+    private final int finalTime;
+    private final double score;
+    private final int mailCreated;
+    private final int mailDelivered;
+    private final int mailRejected;
+
+    public SimulationResult(int finalTime, double score, int mailCreated, int mailDelivered, int mailRejected) {
+        this.finalTime = finalTime;
+        this.score = score;
+        this.mailCreated = mailCreated;
+        this.mailDelivered = mailDelivered;
+        this.mailRejected = mailRejected;
+    }
+
+    /**
+     * @return the time at which the last mail item was delivered
+     */
+    public int getFinalTime() {
+        return finalTime;
+    }
+
+    /**
+     * @return the total delivery score, lower is better
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return the number of mail items created by the mail generator
+     */
+    public int getMailCreated() {
+        return mailCreated;
+    }
+
+    /**
+     * @return the number of mail items delivered by the robots
+     */
+    public int getMailDelivered() {
+        return mailDelivered;
+    }
+
+    /**
+     * @return the number of mail items rejected by the mail pool for being too heavy
+     */
+    public int getMailRejected() {
+        return mailRejected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SimulationResult{finalTime=%d, score=%.2f, created=%d, delivered=%d, rejected=%d}",
+                finalTime, score, mailCreated, mailDelivered, mailRejected);
+    }
+}
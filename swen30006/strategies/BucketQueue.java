@@ -0,0 +1,209 @@
+package strategies;
+
+import java.util.Iterator;
+
+import automail.MailItem;
+
+/**
+ * A BucketQueue is a FIFO queue of mail items that a mail pool shares with its forks.<br/><br/>
+ *
+ * The items are kept in a trie of 32-way nodes by the position they were added at.
+ * Taking the first item only moves the head, and adding an item copies the nodes on the path
+ * to its position that the mail pool does not own, so a copy of the queue costs O(1) and
+ * the queue and its copy share every node neither of them has changed since.<br/><br/>
+ *
+ * Next to each item it keeps the number of robots needed to carry it, worked out once when the item
+ * is added, so the mail pool can check whether the first item can be loaded without weighing it again.<br/><br/>
+ *
+ * A node is owned by the mail pool that made it, identified by the owner given to each change.
+ * Once a mail pool is forked it changes its owner, so that from then on neither it nor the fork
+ * changes a shared node in place. While a mail pool is not forked it changes its own nodes in place.
+ */
+final class BucketQueue {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	/**
+	 * A node of the trie: child nodes, or mail items and the number of robots
+	 * needed for each at the lowest level
+	 */
+	private static final class Node {
+		final Object owner;
+		final Object[] array;
+		/** The number of robots needed for each item of a lowest level node, null above it */
+		final byte[] teamSizes;
+
+		Node(Object owner, boolean leaf) {
+			this.owner = owner;
+			this.array = new Object[WIDTH];
+			this.teamSizes = leaf ? new byte[WIDTH] : null;
+		}
+
+		Node(Object owner, Node node) {
+			this.owner = owner;
+			this.array = node.array.clone();
+			this.teamSizes = node.teamSizes == null ? null : node.teamSizes.clone();
+		}
+	}
+
+	/** The trie, or null while the queue has no nodes */
+	private Node root;
+	/** The level of the root: positions below 1 << (shift + BITS) fit in the trie */
+	private int shift;
+	/** The position of the first item */
+	private int head;
+	/** The position the next item is added at */
+	private int tail;
+
+	BucketQueue() {
+	}
+
+	/**
+	 * A copy of a queue, sharing its nodes
+	 */
+	BucketQueue(BucketQueue queue) {
+		this.root = queue.root;
+		this.shift = queue.shift;
+		this.head = queue.head;
+		this.tail = queue.tail;
+	}
+
+	boolean isEmpty() {
+		return head == tail;
+	}
+
+	/**
+	 * @return the number of robots needed to carry the first item, which must exist
+	 */
+	int peekFirstTeamSize() {
+		assert(head != tail);
+		return leaf(head).teamSizes[head & MASK];
+	}
+
+	/**
+	 * @return the lowest level node holding a position
+	 */
+	private Node leaf(int position) {
+		Node node = root;
+		for (int level = shift; level > 0; level -= BITS) {
+			node = (Node) node.array[(position >>> level) & MASK];
+		}
+		return node;
+	}
+
+	/**
+	 * This method removes the first item. The item is let go if the owner owns its node,
+	 * and the whole trie is let go once the queue is empty.
+	 * @param owner the owner of the mail pool taking the item
+	 * @return the first item, or null if the queue is empty
+	 */
+	MailItem pollFirst(Object owner) {
+		if (head == tail) {
+			return null;
+		}
+		Node node = leaf(head);
+		MailItem item = (MailItem) node.array[head & MASK];
+		if (node.owner == owner) {
+			node.array[head & MASK] = null;
+		}
+		head++;
+		if (head == tail) {
+			// Forget the positions used, so the trie does not grow with every item ever added.
+			// The mail pool drops an empty bucket, so no new trie is made until an item is added.
+			root = null;
+			shift = 0;
+			head = 0;
+			tail = 0;
+		} else if ((head & MASK) == 0 && shift > 0) {
+			releaseLeaf(head - 1, owner);
+		}
+		return item;
+	}
+
+	/**
+	 * This method lets go of the lowest node holding a position before the head,
+	 * if the owner owns the nodes on the path to it
+	 */
+	private void releaseLeaf(int position, Object owner) {
+		Node node = root;
+		for (int level = shift; level > BITS; level -= BITS) {
+			if (node.owner != owner) {
+				return;
+			}
+			node = (Node) node.array[(position >>> level) & MASK];
+		}
+		if (node.owner == owner) {
+			node.array[(position >>> BITS) & MASK] = null;
+		}
+	}
+
+	/**
+	 * This method adds an item at the end, copying the nodes on its path the owner does not own
+	 * @param owner the owner of the mail pool adding the item
+	 * @param item the item to add
+	 * @param teamSize the number of robots needed to carry the item
+	 */
+	void addLast(Object owner, MailItem item, int teamSize) {
+		if (root == null) {
+			root = new Node(owner, true);
+		} else if (tail == 1 << (shift + BITS)) {
+			Node newRoot = new Node(owner, false);
+			newRoot.array[0] = root;
+			root = newRoot;
+			shift += BITS;
+		} else if (root.owner != owner) {
+			root = new Node(owner, root);
+		}
+		Node node = root;
+		for (int level = shift; level > 0; level -= BITS) {
+			int i = (tail >>> level) & MASK;
+			Node child = (Node) node.array[i];
+			if (child == null) {
+				child = new Node(owner, level == BITS);
+				node.array[i] = child;
+			} else if (child.owner != owner) {
+				child = new Node(owner, child);
+				node.array[i] = child;
+			}
+			node = child;
+		}
+		node.array[tail & MASK] = item;
+		node.teamSizes[tail & MASK] = (byte) teamSize;
+		tail++;
+	}
+
+	/**
+	 * @return the items from first to last
+	 */
+	Iterable<MailItem> items() {
+		return () -> new Iterator<MailItem>() {
+			private int position = head;
+
+			@Override
+			public boolean hasNext() {
+				return position < tail;
+			}
+
+			@Override
+			public MailItem next() {
+				MailItem item = (MailItem) leaf(position).array[position & MASK];
+				position++;
+				return item;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("[");
+		for (MailItem item : items()) {
+			if (text.length() > 1) {
+				text.append(", ");
+			}
+			text.append(item);
+		}
+		return text.append(']').toString();
+	}
+}
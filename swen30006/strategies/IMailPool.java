@@ -1,8 +1,16 @@
 package strategies;
 
+import automail.Clock;
 import automail.MailItem;
 import automail.Robot;
 import exceptions.ItemTooHeavyException;
+import util.DeliveryMetrics;
+import util.EventLog;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
 
 /**
  * addToPool is called when there are mail items newly arrived at the building to add to the MailPool or
@@ -17,12 +25,33 @@ public interface IMailPool {
      * @param mailItem the mail item being added.
      */
     void addToPool(MailItem mailItem);
+
+	/**
+	 * Adds the items arriving in the same unit of time to the mail pool in one pass
+	 * @param mailItems the mail items being added, in arrival order.
+	 */
+	void addAllToPool(Collection<MailItem> mailItems);
+
+	/**
+	 * Rejects an item heavier than the mail pool accepts, as addToPool and addAllToPool do.
+	 * A mail source calls it as each item arrives, before adding the rest in one pass,
+	 * so that the rejection is logged right after the arrival.
+	 * @param mailItem the mail item arriving.
+	 * @return true if the mail item is rejected and must not be added
+	 */
+	boolean rejectIfTooHeavy(MailItem mailItem);
     
     /**
      * This method loads up any waiting robots with mail items, if any.
      */
 	void step() throws ItemTooHeavyException;
 
+	/**
+	 * This method checks whether the next step would load any robot.
+	 * @return true if a robot is waiting and there are enough robots to load the first mail item
+	 */
+	boolean canLoad();
+
 	/**
      * @param robot refers to a robot which has arrived back ready for more mailItems to deliver
      */	
@@ -50,14 +79,46 @@ public interface IMailPool {
 	/**
 	 * This method returns the number of robots delivering a mail item.
 	 * @param mailItem The id of the mail item delivering by one or more robots
-	 * @return the number of robots delivering the mail item
+	 * @return the number of robots delivering the mail item, or 0 if it is not being delivered
 	 */
 	int getRobotsDelivering(MailItem mailItem);
 
 	/**
 	 * This method removes a robot from a list of mail items delivering.
+	 * Once the last robot is removed, the mail item is no longer being delivered.
 	 * @param mailItem the mail item being delivered
 	 */
 	void removeRobotFromDelivery(MailItem mailItem);
 
+	/**
+	 * This method writes the mail items of the pool, the waiting robots and the mail items
+	 * being delivered to a checkpoint, in an order that readState restores exactly.
+	 * @param out where to write
+	 */
+	void writeState(DataOutput out) throws IOException;
+
+	/**
+	 * This method restores a new, empty mail pool to the state written by writeState
+	 * @param in where to read
+	 * @param robots the robots of the Simulation, by index
+	 */
+	void readState(DataInput in, Robot[] robots) throws IOException;
+
+	/**
+	 * This method makes an independent copy of the mail pool for a fork of the Simulation.
+	 * Changes to either do not show in the other.
+	 * @param robots the robots of the fork, by index, which take the places of the waiting robots
+	 * @param clock the clock of the fork
+	 * @param eventLog the event log of the fork
+	 * @return the copy
+	 */
+	IMailPool fork(Robot[] robots, Clock clock, EventLog eventLog);
+
+	/**
+	 * This method sets the metrics the rejections and the size of the pool are counted in.
+	 * A fork starts without metrics.
+	 * @param metrics the metrics of the Simulation, or null for none
+	 */
+	void setMetrics(DeliveryMetrics metrics);
+
 }
@@ -0,0 +1,401 @@
+package strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+import automail.*;
+import exceptions.ItemTooHeavyException;
+import util.Checkpoint;
+import util.DeliveryMetrics;
+import util.EventLog;
+import util.FlightRecording;
+import util.PoolStepEvent;
+import util.TeamDispatchEvent;
+
+/**
+ * An IndexedMailPool delivers mail items in the same order as {@link MailPool},
+ * but keeps the pool in buckets keyed by priority level and destination floor
+ * instead of re-sorting a list on every arrival.<br/><br/>
+ *
+ * Buckets are ordered by priority level in descending order, then by destination
+ * floor in descending order, which matches {@link MailPool.ItemComparator}.
+ * Each bucket is a FIFO queue, so items with the same priority and destination
+ * keep their arrival order as they would with a stable sort.<br/><br/>
+ *
+ * Adding an item and taking the best item both cost O(log b),
+ * where b is the number of non-empty buckets. The buckets hold the mail items
+ * themselves, with no wrapper object per item, and the number of robots each item needs,
+ * worked out once when it is added.<br/><br/>
+ *
+ * The buckets are {@link BucketQueue}s, which a fork shares with the mail pool it was forked from,
+ * so forking costs O(b) plus the waiting robots, whatever the number of mail items in the pool.
+ */
+public class IndexedMailPool implements IMailPool {
+
+	private int MAX_WEIGHT;
+
+	private int numOfMailItemRejected;
+	private final RobotsDelivering robotsDelivering;
+
+	private TreeMap<Long, BucketQueue> pool = new TreeMap<>();
+	private int poolSize;
+	/** Marks the nodes of the buckets this mail pool may change in place */
+	private Object owner = new Object();
+	private LinkedList<Robot> robots;
+	private int numOfRobots;
+	private Clock clock;
+	private EventLog eventLog;
+	private DeliveryMetrics metrics;
+
+	public IndexedMailPool(LinkedList<Robot> robots, int nrobots, Clock clock, EventLog eventLog){
+		// Start empty
+		this.robots = robots;
+		this.numOfRobots = nrobots;
+		this.clock = clock;
+		this.eventLog = eventLog;
+		this.MAX_WEIGHT = MailPool.getMaxWeight(nrobots);
+		this.robotsDelivering = new RobotsDelivering();
+	}
+
+	/**
+	 * A fork of a mail pool, sharing its buckets
+	 * @param mailPool the mail pool forked
+	 * @param robots the robots of the fork, by index
+	 */
+	private IndexedMailPool(IndexedMailPool mailPool, Robot[] robots, Clock clock, EventLog eventLog) {
+		this.robots = new LinkedList<>();
+		for (Robot robot : mailPool.robots) {
+			this.robots.add(robots[robot.getIndex()]);
+		}
+		this.numOfRobots = mailPool.numOfRobots;
+		this.clock = clock;
+		this.eventLog = eventLog;
+		this.MAX_WEIGHT = mailPool.MAX_WEIGHT;
+		this.numOfMailItemRejected = mailPool.numOfMailItemRejected;
+		this.robotsDelivering = new RobotsDelivering(mailPool.robotsDelivering);
+		for (Map.Entry<Long, BucketQueue> bucket : mailPool.pool.entrySet()) {
+			pool.put(bucket.getKey(), new BucketQueue(bucket.getValue()));
+		}
+		this.poolSize = mailPool.poolSize;
+		// From now on neither changes the nodes they share in place
+		mailPool.owner = new Object();
+	}
+
+	@Override
+	public IMailPool fork(Robot[] robots, Clock clock, EventLog eventLog) {
+		return new IndexedMailPool(this, robots, clock, eventLog);
+	}
+
+	/**
+	 * This method adds a mailItem into the bucket of its priority level and destination floor
+	 */
+	@Override
+	public void addToPool(MailItem mailItem){
+		if (rejectIfTooHeavy(mailItem)) {
+			return;
+		}
+		addToBucket(mailItem);
+		updateBacklog();
+	}
+
+	/**
+	 * This method adds mailItems arriving together into their buckets in one pass
+	 */
+	@Override
+	public void addAllToPool(Collection<MailItem> mailItems){
+		for (MailItem mailItem : mailItems) {
+			if (!rejectIfTooHeavy(mailItem)) {
+				addToBucket(mailItem);
+			}
+		}
+		updateBacklog();
+	}
+
+	/**
+	 * This method adds an item to the end of the bucket of its priority level and destination floor
+	 * @param mailItem a mailItem accepted by the mail pool
+	 */
+	private void addToBucket(MailItem mailItem) {
+		pool.computeIfAbsent(key(mailItem), k -> new BucketQueue())
+				.addLast(owner, mailItem, MailPool.getNumOfRobotsNeeded(mailItem));
+		poolSize++;
+	}
+
+	/**
+	 * This method gets the bucket key of a mailItem.
+	 * A larger key is delivered first.
+	 * @param mailItem a mailItem in the mail pool
+	 * @return the priority level in the high bits and the destination floor in the low bits
+	 */
+	private static long key(MailItem mailItem) {
+		return ((long) MailPool.getPriority(mailItem) << 32) | (mailItem.getDestFloor() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * This method rejects a mailItem heavier than the mail pool accepts
+	 * @param mailItem a mailItem arriving at the mail pool
+	 * @return true if the mailItem is rejected and must not be added
+	 */
+	@Override
+	public boolean rejectIfTooHeavy(MailItem mailItem) {
+		if (mailItem.getWeight() > getSysMaxWeight()) {
+			eventLog.rejection(clock.Time(), mailItem);
+			numOfMailItemRejected++;
+			if (metrics != null) {
+				metrics.rejected();
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This method loads mailItems to the waiting robots, taking the best item
+	 * of the pool each time, until the pool or the robots run out.
+	 * A long step is recorded as a {@link PoolStepEvent}.
+	 */
+	@Override
+	public void step() throws ItemTooHeavyException {
+		PoolStepEvent event = FlightRecording.beginPoolStep();
+		if (event == null) {
+			loadWaitingRobots();
+			return;
+		}
+		int backlog = poolSize;
+		loadWaitingRobots();
+		event.commit(clock.Time(), backlog - poolSize, poolSize);
+	}
+
+	/**
+	 * This method takes the best item of the pool for the waiting robots
+	 * while there are enough of them to carry it
+	 * @throws ItemTooHeavyException
+	 */
+	private void loadWaitingRobots() throws ItemTooHeavyException {
+		while (!robots.isEmpty() && poolSize > 0) {
+			int numOfRobotsNeeded = peekBestTeamSize();
+			int numOfRobotsAvailable = getNumOfRobotsAvailable();
+
+			// Stop if not enough robots can be used for team delivery. Return to wait for robots to come back
+			if (numOfRobotsNeeded > numOfRobotsAvailable) {
+				return;
+			}
+
+			switch(numOfRobotsNeeded) {
+				case 1:
+					loadRobot(); // load hand first, then tube
+					break;
+				default:
+					// Load more than one robot
+					loadRobots(numOfRobotsNeeded);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * This method loads the best item to the hand of the first waiting robot,
+	 * and the next best item to its tube if one robot can carry it
+	 * @throws ItemTooHeavyException
+	 */
+	private void loadRobot() throws ItemTooHeavyException {
+		Robot robot = robots.getFirst();
+		assert(robot.isEmpty());
+		// Add to hand
+		MailItem item = pollBest();
+		robot.addToHand(item); // hand first as we want higher priority delivered first
+		robotsDelivering.put(item.getIndex(), TeamSize.ONE.getValue());
+
+		// Add to tube
+		if (poolSize > 0 && peekBestTeamSize() == TeamSize.ONE.getValue()) {
+			item = pollBest();
+			robot.addToTube(item);
+			robotsDelivering.put(item.getIndex(), TeamSize.ONE.getValue());
+		}
+		robot.dispatch(); // send the robot off if it has any items to deliver
+		robots.removeFirst(); // remove from mailPool queue
+		updateBacklog();
+	}
+
+	/**
+	 * This method loads the best item to the hands of a team of waiting robots
+	 * @param numOfRobotsNeeded the number of robots needed to carry the best item
+	 * @throws ItemTooHeavyException
+	 */
+	private void loadRobots(int numOfRobotsNeeded) throws ItemTooHeavyException {
+		MailItem item = pollBest();
+		Robot[] robotsToDispatch = new Robot[numOfRobotsNeeded];
+		for (int count = 0; count < numOfRobotsNeeded; count++) {
+			Robot robot = robots.removeFirst(); // remove robot from robot queue
+			robotsToDispatch[count] = robot;
+
+			assert(robot.isEmpty());
+			robot.addToHand(item); // hand first as we want higher priority delivered first
+			robot.turnTeamModeOn();
+		}
+		for (Robot robot : robotsToDispatch) {
+			robot.dispatch(); // send the robots off as a team
+		}
+		robotsDelivering.put(item.getIndex(), numOfRobotsNeeded);
+		updateBacklog();
+		if (FlightRecording.isOn() && TeamDispatchEvent.isTypeEnabled()) {
+			new TeamDispatchEvent().commit(clock.Time(), item.getIndex(), item.getWeight(), numOfRobotsNeeded);
+		}
+	}
+
+	/**
+	 * This method gets the number of robots needed for the item to be delivered next,
+	 * as worked out when the item was added
+	 * @return the team size of the first item of the highest bucket
+	 */
+	private int peekBestTeamSize() {
+		return pool.lastEntry().getValue().peekFirstTeamSize();
+	}
+
+	/**
+	 * This method removes the item to be delivered next from the pool
+	 * @return the first item of the highest bucket
+	 */
+	private MailItem pollBest() {
+		Map.Entry<Long, BucketQueue> bucket = pool.lastEntry();
+		MailItem item = bucket.getValue().pollFirst(owner);
+		if (bucket.getValue().isEmpty()) {
+			pool.remove(bucket.getKey());
+		}
+		poolSize--;
+		return item;
+	}
+
+	@Override
+	public boolean canLoad() {
+		return !robots.isEmpty() && poolSize > 0
+				&& peekBestTeamSize() <= getNumOfRobotsAvailable();
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) { // assumes won't be there already
+		assert(robot.isEmpty());
+		robots.add(robot);
+	}
+
+	/**
+	 * This method returns the total number of robots available.
+	 * @return the number of robots at the mail pool
+	 */
+	@Override
+	public int getNumOfRobots(){
+		return numOfRobots;
+	}
+
+	/**
+	 * This method gets the number of robots waiting at the mail room
+	 * and ready to load and deliver mail items.<br/><br/>
+	 *
+	 * A robot registers waiting once it is back at the mail room with nothing to deliver,
+	 * and leaves the queue as soon as it is loaded, so every robot in the queue is empty
+	 * and waiting by the time the pool steps. The queue keeps its size as robots
+	 * register and are dispatched, so this costs O(1) instead of a walk over the robots.
+	 * @return the number of robots waiting for delivery assignments
+	 */
+	private int getNumOfRobotsAvailable() {
+		return robots.size();
+	}
+
+	/**
+	 * This method gets the number of mail items rejected by the mail pool.
+	 * @return the number of mail items rejected for delivery
+	 */
+	@Override
+	public int getNumOfMailItemRejected() {
+		return numOfMailItemRejected;
+	}
+
+	/**
+	 * This method gets the maximum weight of a mail item the mail pool accepts.
+	 * @return the maximum weight of a mail item accepted for delivery
+	 */
+	@Override
+	public int getSysMaxWeight() {
+		return MAX_WEIGHT;
+	}
+
+	/**
+	 * This method gets the number of robots delivering a mail item.
+	 * @param mailItem The id of the mail item delivering by one or more robots
+	 * @return the number of robots being used for delivering the mail item.
+	 */
+	@Override
+	public int getRobotsDelivering(MailItem mailItem){
+		return robotsDelivering.get(mailItem.getIndex());
+	}
+
+	/**
+	 * This method reduces the number of robots delivering a mail item.
+	 * It is called when a robot reaches the destination floor, as a team or on its own.
+	 * The mail item is forgotten once the last robot delivers it.
+	 * @param mailItem the mail item being delivered
+	 */
+	@Override
+	public void removeRobotFromDelivery(MailItem mailItem){
+		robotsDelivering.decrement(mailItem.getIndex());
+	}
+
+	/**
+	 * This method writes the rejected count, the pool bucket by bucket, the waiting robots
+	 * in queue order and the mail items being delivered to a checkpoint
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(numOfMailItemRejected);
+		out.writeInt(poolSize);
+		for (BucketQueue bucket : pool.descendingMap().values()) {
+			for (MailItem mailItem : bucket.items()) {
+				Checkpoint.writeMailItem(out, mailItem);
+			}
+		}
+		out.writeInt(robots.size());
+		for (Robot robot : robots) {
+			out.writeInt(robot.getIndex());
+		}
+		robotsDelivering.writeState(out);
+	}
+
+	@Override
+	public void readState(DataInput in, Robot[] robots) throws IOException {
+		numOfMailItemRejected = in.readInt();
+		for (int n = in.readInt(); n > 0; n--) {
+			addToBucket(Checkpoint.readMailItem(in));
+		}
+		for (int n = in.readInt(); n > 0; n--) {
+			this.robots.add(robots[in.readInt()]);
+		}
+		robotsDelivering.readState(in);
+		updateBacklog();
+	}
+
+	@Override
+	public void setMetrics(DeliveryMetrics metrics) {
+		this.metrics = metrics;
+		updateBacklog();
+	}
+
+	/**
+	 * This method tells the metrics, if any, the number of mail items in the pool
+	 */
+	private void updateBacklog() {
+		if (metrics != null) {
+			metrics.setPoolBacklog(poolSize);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "IndexedMailPool{" +
+				"pool=" + pool.descendingMap().values() +
+				", robots=" + robots +
+				", numOfRobots=" + numOfRobots +
+				'}';
+	}
+}
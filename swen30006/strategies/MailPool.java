@@ -1,10 +1,18 @@
 package strategies;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 import automail.*;
-import automail.Robot.RobotState;
 import exceptions.ItemTooHeavyException;
+import util.Checkpoint;
+import util.DeliveryMetrics;
+import util.EventLog;
+import util.FlightRecording;
+import util.PoolStepEvent;
+import util.TeamDispatchEvent;
 
 /**
  * A MailPool subsystem receives and delivers mail items in a building
@@ -19,30 +27,20 @@ import exceptions.ItemTooHeavyException;
  */
 public class MailPool implements IMailPool {
 
-	private class Item {
-		int priority;
-		int destination;
-		MailItem mailItem;
-		// Use stable sort to keep arrival time relative positions
-		
-		public Item(MailItem mailItem) {
-			this.priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 1;
-			this.destination = mailItem.getDestFloor();
-			this.mailItem = mailItem;
-		}
-	}
-	
-	public class ItemComparator implements Comparator<Item> {
+	// Use stable sort to keep arrival time relative positions
+	public class ItemComparator implements Comparator<MailItem> {
 		@Override
-		public int compare(Item i1, Item i2) {
+		public int compare(MailItem i1, MailItem i2) {
+			int priority1 = getPriority(i1);
+			int priority2 = getPriority(i2);
 			int order = 0;
-			if (i1.priority < i2.priority) {
+			if (priority1 < priority2) {
 				order = 1;
-			} else if (i1.priority > i2.priority) {
+			} else if (priority1 > priority2) {
 				order = -1;
-			} else if (i1.destination < i2.destination) {
+			} else if (i1.getDestFloor() < i2.getDestFloor()) {
 				order = 1;
-			} else if (i1.destination > i2.destination) {
+			} else if (i1.getDestFloor() > i2.getDestFloor()) {
 				order = -1;
 			}
 			return order;
@@ -51,49 +49,146 @@ public class MailPool implements IMailPool {
 	
 	private int MAX_WEIGHT;
 	
-	private List<MailItem> mailRejectedList = new ArrayList<>();
-	private HashMap<MailItem, Integer> robotsDeliveringMap = new HashMap<>();
+	private int numOfMailItemRejected;
+	private final RobotsDelivering robotsDelivering;
 
-	private LinkedList<Item> pool;
+	private LinkedList<MailItem> pool;
 	private LinkedList<Robot> robots;
 	private int numOfRobots;
+	private Clock clock;
+	private EventLog eventLog;
+	private DeliveryMetrics metrics;
 
-	public MailPool(LinkedList<Item> pool, LinkedList<Robot> robots, int nrobots){
+	public MailPool(LinkedList<MailItem> pool, LinkedList<Robot> robots, int nrobots, Clock clock, EventLog eventLog){
 		// Start empty
 		this.pool = pool;
 		this.robots = robots;
 		this.numOfRobots = nrobots;
+		this.clock = clock;
+		this.eventLog = eventLog;
+
+		this.robotsDelivering = new RobotsDelivering();
 
 		setMaxWeight(nrobots);
 	}
 
+	/**
+	 * A fork of a mail pool, with a copy of its list of mail items
+	 * @param mailPool the mail pool forked
+	 * @param robots the robots of the fork, by index
+	 */
+	private MailPool(MailPool mailPool, Robot[] robots, Clock clock, EventLog eventLog) {
+		this.pool = new LinkedList<>(mailPool.pool);
+		this.robots = new LinkedList<>();
+		for (Robot robot : mailPool.robots) {
+			this.robots.add(robots[robot.getIndex()]);
+		}
+		this.numOfRobots = mailPool.numOfRobots;
+		this.clock = clock;
+		this.eventLog = eventLog;
+		this.MAX_WEIGHT = mailPool.MAX_WEIGHT;
+		this.numOfMailItemRejected = mailPool.numOfMailItemRejected;
+		this.robotsDelivering = new RobotsDelivering(mailPool.robotsDelivering);
+	}
+
+	/**
+	 * This method forks the mail pool. The list of mail items is copied, which costs O(n);
+	 * {@link IndexedMailPool} shares its buckets instead.
+	 */
+	@Override
+	public IMailPool fork(Robot[] robots, Clock clock, EventLog eventLog) {
+		return new MailPool(this, robots, clock, eventLog);
+	}
+
 	/**
 	 * This method adds a mailItem into the pool and sort in by priority in descending order
 	 */
 	public void addToPool(MailItem mailItem){
-		if (mailItem.getWeight() > getSysMaxWeight()) {
-			System.out.printf("T: %3d > Item too heavy. Rejected addToPool [%s]%n",
-					Clock.Time(), mailItem.toString());
-    		mailRejectedList.add(mailItem);
+		if (rejectIfTooHeavy(mailItem)) {
 			return;
-    	}
-		Item item = new Item(mailItem);
-		pool.add(item);
+		}
+		pool.add(mailItem);
 		pool.sort(new ItemComparator());
+		updateBacklog();
+	}
+
+	/**
+	 * This method adds mailItems arriving together into the pool in one pass.
+	 * The new items are sorted on their own and then merged into the sorted pool,
+	 * instead of sorting the whole pool once per item.
+	 */
+	@Override
+	public void addAllToPool(Collection<MailItem> mailItems){
+		List<MailItem> items = new ArrayList<>(mailItems.size());
+		for (MailItem mailItem : mailItems) {
+			if (!rejectIfTooHeavy(mailItem)) {
+				items.add(mailItem);
+			}
+		}
+		ItemComparator comparator = new ItemComparator();
+		items.sort(comparator); // stable, so arrival order is kept between equal items
+
+		ListIterator<MailItem> j = pool.listIterator();
+		for (MailItem item : items) {
+			// Skip past every pooled item that is delivered no later than this one
+			while (j.hasNext()) {
+				if (comparator.compare(item, j.next()) < 0) {
+					j.previous();
+					break;
+				}
+			}
+			j.add(item);
+		}
+		updateBacklog();
+	}
+
+	/**
+	 * This method rejects a mailItem heavier than the mail pool accepts
+	 * @param mailItem a mailItem arriving at the mail pool
+	 * @return true if the mailItem is rejected and must not be added
+	 */
+	@Override
+	public boolean rejectIfTooHeavy(MailItem mailItem) {
+		if (mailItem.getWeight() > getSysMaxWeight()) {
+			eventLog.rejection(clock.Time(), mailItem);
+			numOfMailItemRejected++;
+			if (metrics != null) {
+				metrics.rejected();
+			}
+			return true;
+		}
+		return false;
 	}
 	
 	/**
 	 * This method loops through a list of robots and 
-	 * loads mailItems to them based on priorities and arrival time
+	 * loads mailItems to them based on priorities and arrival time.
+	 * A long step is recorded as a {@link PoolStepEvent}.
 	 */
 	@Override
 	public void step() throws ItemTooHeavyException {
+		PoolStepEvent event = FlightRecording.beginPoolStep();
+		if (event == null) {
+			loadWaitingRobots();
+			return;
+		}
+		int backlog = pool.size();
+		loadWaitingRobots();
+		event.commit(clock.Time(), backlog - pool.size(), pool.size());
+	}
+
+	/**
+	 * This method loads the waiting robots until the next mailItem
+	 * needs more robots than are waiting
+	 * @throws ItemTooHeavyException
+	 */
+	private void loadWaitingRobots() throws ItemTooHeavyException {
 		try{
 			ListIterator<Robot> i = robots.listIterator();
-			ListIterator<Item> j = pool.listIterator();
+			ListIterator<MailItem> j = pool.listIterator();
 			
 			while (i.hasNext() && j.hasNext()) {
-				MailItem mailItem = j.next().mailItem;
+				MailItem mailItem = j.next();
 				int numOfRobotsNeeded = getNumOfRobotsNeeded(mailItem);
 				int numOfRobotsAvailable = getNumOfRobotsAvailable();
 				
@@ -126,7 +221,7 @@ public class MailPool implements IMailPool {
 	 * @param mailItem the first mailItem to be added to this robot
 	 * @throws ItemTooHeavyException
 	 */
-	private void loadRobot(ListIterator<Robot> i, ListIterator<Item> j, MailItem mailItem)
+	private void loadRobot(ListIterator<Robot> i, ListIterator<MailItem> j, MailItem mailItem)
 			throws ItemTooHeavyException {
 		// System.out.printf("P: %3d%n", pool.size());
 		MailItem item = mailItem;
@@ -135,15 +230,15 @@ public class MailPool implements IMailPool {
 		try {
 			// Add to hand
 			robot.addToHand(item); // hand first as we want higher priority delivered first
-			robotsDeliveringMap.put(item, 1);
+			robotsDelivering.put(item.getIndex(), 1);
 			j.remove();
 			
 			// Add to tube
 			if (j.hasNext()) {
-				item = j.next().mailItem;
+				item = j.next();
 				if (getNumOfRobotsNeeded(item) == TeamSize.ONE.getValue()) {
 					robot.addToTube(item);
-					robotsDeliveringMap.put(item, TeamSize.ONE.getValue());
+					robotsDelivering.put(item.getIndex(), TeamSize.ONE.getValue());
 					j.remove();
 				} else {
 					j.previous(); // Move back the pointer 
@@ -151,6 +246,7 @@ public class MailPool implements IMailPool {
 			}
 			robot.dispatch(); // send the robot off if it has any items to deliver
 			i.remove();       // remove from mailPool queue
+			updateBacklog();
 		} catch (Exception e) { 
             throw e; 
         }
@@ -163,15 +259,15 @@ public class MailPool implements IMailPool {
 	 * @param mailItem the first mailItem to be added to this robot
 	 * @throws ItemTooHeavyException
 	 */
-	private void loadRobots(ListIterator<Robot> i, ListIterator<Item> j, MailItem mailItem) 
+	private void loadRobots(ListIterator<Robot> i, ListIterator<MailItem> j, MailItem mailItem) 
 			throws ItemTooHeavyException {
 		// Check item weight and decide the number of robots requiredMailItem item = mailItem;
 		int numOfRobotsNeeded = getNumOfRobotsNeeded(mailItem);
-		List<Robot> robotsToDispatch = new ArrayList<>();
+		Robot[] robotsToDispatch = new Robot[numOfRobotsNeeded];
 		try {
 			for (int count = 0; count < numOfRobotsNeeded; count++) {
 				Robot robot = i.next();
-				robotsToDispatch.add(robot);
+				robotsToDispatch[count] = robot;
 
 				assert(robot.isEmpty());
 				robot.addToHand(mailItem); // hand first as we want higher priority delivered first
@@ -179,16 +275,29 @@ public class MailPool implements IMailPool {
 				robot.turnTeamModeOn();
 				i.remove(); // remove robot from robot queue
 			}
-			robotsToDispatch.forEach(robot -> robot.dispatch()); // send the robots off as a team
-			robotsDeliveringMap.put(mailItem, numOfRobotsNeeded);
+			for (Robot robot : robotsToDispatch) {
+				robot.dispatch(); // send the robots off as a team
+			}
+			robotsDelivering.put(mailItem.getIndex(), numOfRobotsNeeded);
 			j.remove(); // remove mailItem from mailPool queue
+			updateBacklog();
+			if (FlightRecording.isOn() && TeamDispatchEvent.isTypeEnabled()) {
+				new TeamDispatchEvent().commit(clock.Time(), mailItem.getIndex(), mailItem.getWeight(), numOfRobotsNeeded);
+			}
 		} catch (Exception e) { 
             throw e; 
         } 
 	}
 
+	@Override
+	public boolean canLoad() {
+		return !robots.isEmpty() && !pool.isEmpty()
+				&& getNumOfRobotsNeeded(pool.getFirst()) <= getNumOfRobotsAvailable();
+	}
+
 	@Override
 	public void registerWaiting(Robot robot) { // assumes won't be there already
+		assert(robot.isEmpty());
 		robots.add(robot);
 	}
 
@@ -198,20 +307,26 @@ public class MailPool implements IMailPool {
 	 * @param numOfRobots the number of robots can be used by the Automail system
 	 */
 	private void setMaxWeight(int numOfRobots){
+		MAX_WEIGHT = getMaxWeight(numOfRobots);
+	}
+
+	/**
+	 * This method gets the maximum weight a mail pool
+	 * can accept based on the number of robots available.
+	 * @param numOfRobots the number of robots can be used by the Automail system
+	 * @return the team capacity of the robots
+	 */
+	static int getMaxWeight(int numOfRobots){
 		switch(numOfRobots) {
 			case 0:
-				MAX_WEIGHT = 0;
-				break;
+				return 0;
 			case 1:
-				MAX_WEIGHT = Robot.INDIVIDUAL_MAX_WEIGHT;
-				break;
+				return Robot.INDIVIDUAL_MAX_WEIGHT;
 			case 2:
-				MAX_WEIGHT = Robot.PAIR_MAX_WEIGHT;
-				break;
+				return Robot.PAIR_MAX_WEIGHT;
 			case 3:
 			default: // 3 or more robots
-				MAX_WEIGHT = Robot.TRIPLE_MAX_WEIGHT;
-				break;
+				return Robot.TRIPLE_MAX_WEIGHT;
 		}
 	}
 
@@ -223,6 +338,15 @@ public class MailPool implements IMailPool {
 		return numOfRobots;
 	}
 
+	/**
+	 * This method gets the priority level a mailItem is delivered by
+	 * @param mailItem a mailItem in the mail pool
+	 * @return the priority level of a priority mail item, or 1 for any other mail item
+	 */
+	static int getPriority(MailItem mailItem) {
+		return (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 1;
+	}
+
 	/**
 	 * This method gets the number of robots needed to deliver a mailItem
 	 * @param mailItem a mailItem to be delivered
@@ -230,7 +354,7 @@ public class MailPool implements IMailPool {
 	 * ranging from 1 for one robot, to 3 for three robots.<br/><br/>
 	 * Return -1 if more than 3 robots is needed.
 	 */
-	private int getNumOfRobotsNeeded(MailItem mailItem) {
+	static int getNumOfRobotsNeeded(MailItem mailItem) {
 		int mailItemWeight = mailItem.getWeight();
 		if (mailItemWeight <= Robot.INDIVIDUAL_MAX_WEIGHT) {
 			return 1;
@@ -246,17 +370,16 @@ public class MailPool implements IMailPool {
 
 	/**
 	 * This method gets the number of robots waiting at the mail room
-	 * and ready to load and deliver mail items.
+	 * and ready to load and deliver mail items.<br/><br/>
+	 *
+	 * A robot registers waiting once it is back at the mail room with nothing to deliver,
+	 * and leaves the queue as soon as it is loaded, so every robot in the queue is empty
+	 * and waiting by the time the pool steps. The queue keeps its size as robots
+	 * register and are dispatched, so this costs O(1) instead of a walk over the robots.
 	 * @return the number of robots waiting for delivery assignments
 	 */
 	private int getNumOfRobotsAvailable() {
-		int count = 0;
-		for (Robot robot: robots) {
-			if (robot.isEmpty() && robot.currentState == RobotState.WAITING) {
-				count++;
-			}
-		}
-		return count;
+		return robots.size();
 	}
 
 	/**
@@ -264,7 +387,7 @@ public class MailPool implements IMailPool {
 	 * @return the number of mail items rejected for delivery
 	 */
 	public int getNumOfMailItemRejected() {
-		return mailRejectedList.size();
+		return numOfMailItemRejected;
 	}
 
 	/**
@@ -281,19 +404,65 @@ public class MailPool implements IMailPool {
 	 * @return the number of robots being used for delivering the mail item.
 	 */
 	public int getRobotsDelivering(MailItem mailItem){
-		return robotsDeliveringMap.get(mailItem);
+		return robotsDelivering.get(mailItem.getIndex());
 	}
 
 	/**
 	 * This method reduces the number of robots delivering a mail item.
-	 * It is called when a robot delivers as a team and it reaches the destination floor.
+	 * It is called when a robot reaches the destination floor, as a team or on its own.
+	 * The mail item is forgotten once the last robot delivers it.
 	 * It is used to make sure all robots arrive at the destination floor
 	 * before updating the delivery status of a mail item.
 	 * @param mailItem the mail item being delivered
 	 */
 	public void removeRobotFromDelivery(MailItem mailItem){
-		int currentTeamSize = robotsDeliveringMap.get(mailItem);
-		robotsDeliveringMap.put(mailItem, --currentTeamSize);
+		robotsDelivering.decrement(mailItem.getIndex());
+	}
+
+	/**
+	 * This method writes the rejected count, the pool in delivery order, the waiting robots
+	 * in queue order and the mail items being delivered to a checkpoint
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(numOfMailItemRejected);
+		out.writeInt(pool.size());
+		for (MailItem mailItem : pool) {
+			Checkpoint.writeMailItem(out, mailItem);
+		}
+		out.writeInt(robots.size());
+		for (Robot robot : robots) {
+			out.writeInt(robot.getIndex());
+		}
+		robotsDelivering.writeState(out);
+	}
+
+	@Override
+	public void readState(DataInput in, Robot[] robots) throws IOException {
+		numOfMailItemRejected = in.readInt();
+		for (int n = in.readInt(); n > 0; n--) {
+			pool.add(Checkpoint.readMailItem(in));
+		}
+		for (int n = in.readInt(); n > 0; n--) {
+			this.robots.add(robots[in.readInt()]);
+		}
+		robotsDelivering.readState(in);
+		updateBacklog();
+	}
+
+	@Override
+	public void setMetrics(DeliveryMetrics metrics) {
+		this.metrics = metrics;
+		updateBacklog();
+	}
+
+	/**
+	 * This method tells the metrics, if any, the number of mail items in the pool
+	 */
+	private void updateBacklog() {
+		if (metrics != null) {
+			metrics.setPoolBacklog(pool.size());
+		}
 	}
 
 	@Override
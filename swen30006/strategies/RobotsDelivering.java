@@ -0,0 +1,168 @@
+package strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * RobotsDelivering counts the robots delivering each mail item that is out for delivery,
+ * keyed by the id of the mail item.<br/><br/>
+ *
+ * It is an open addressing hash table of int ids to int counts with linear probing,
+ * so nothing is boxed. A mail item is removed once its count reaches 0,
+ * so the table only grows with the mail items being delivered at once.
+ */
+final class RobotsDelivering {
+
+	/** Marks a free slot. Mail item ids start at 0. */
+	private static final int FREE = -1;
+
+	private int[] ids;
+	private int[] counts;
+	private int size;
+	/** The slot of an id is the top bits of its hash, so the capacity is 2^(32 - shift) */
+	private int shift;
+
+	RobotsDelivering() {
+		allocate(16);
+	}
+
+	/**
+	 * A copy of a table
+	 */
+	RobotsDelivering(RobotsDelivering table) {
+		ids = table.ids.clone();
+		counts = table.counts.clone();
+		size = table.size;
+		shift = table.shift;
+	}
+
+	private void allocate(int capacity) {
+		ids = new int[capacity];
+		Arrays.fill(ids, FREE);
+		counts = new int[capacity];
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+	}
+
+	private int slot(int id) {
+		return (id * 0x9E3779B9) >>> shift;
+	}
+
+	/**
+	 * @param id the id of a mail item
+	 * @return the slot holding the id, or the free slot where it would go
+	 */
+	private int find(int id) {
+		int mask = ids.length - 1;
+		int i = slot(id);
+		while (ids[i] != FREE && ids[i] != id) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * This method sets the number of robots delivering a mail item
+	 * @param id the id of the mail item
+	 * @param count the number of robots, at least 1
+	 */
+	void put(int id, int count) {
+		int i = find(id);
+		if (ids[i] == FREE) {
+			if (2 * (size + 1) > ids.length) {
+				grow();
+				i = find(id);
+			}
+			ids[i] = id;
+			size++;
+		}
+		counts[i] = count;
+	}
+
+	/**
+	 * @param id the id of a mail item
+	 * @return the number of robots delivering the mail item, or 0 if none are
+	 */
+	int get(int id) {
+		int i = find(id);
+		return ids[i] == FREE ? 0 : counts[i];
+	}
+
+	/**
+	 * This method takes one robot off the delivery of a mail item,
+	 * and forgets the mail item when no robot is left delivering it
+	 * @param id the id of the mail item
+	 */
+	void decrement(int id) {
+		int i = find(id);
+		if (ids[i] == FREE) {
+			return;
+		}
+		if (--counts[i] == 0) {
+			remove(i);
+		}
+	}
+
+	/**
+	 * This method writes the mail items being delivered and their counts to a checkpoint
+	 * @param out where to write
+	 */
+	void writeState(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] != FREE) {
+				out.writeInt(ids[i]);
+				out.writeInt(counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * This method adds the mail items being delivered written by writeState
+	 * @param in where to read
+	 */
+	void readState(DataInput in) throws IOException {
+		for (int n = in.readInt(); n > 0; n--) {
+			int id = in.readInt();
+			put(id, in.readInt());
+		}
+	}
+
+	/**
+	 * This method frees a slot, moving back the ids after it that would no longer be found
+	 * @param free the slot to free
+	 */
+	private void remove(int free) {
+		int mask = ids.length - 1;
+		int i = free;
+		while (true) {
+			i = (i + 1) & mask;
+			if (ids[i] == FREE) {
+				break;
+			}
+			// Move the id back if its home slot is not between the free slot and its slot
+			int home = slot(ids[i]);
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				ids[free] = ids[i];
+				counts[free] = counts[i];
+				free = i;
+			}
+		}
+		ids[free] = FREE;
+		size--;
+	}
+
+	private void grow() {
+		int[] oldIds = ids;
+		int[] oldCounts = counts;
+		allocate(2 * oldIds.length);
+		for (int i = 0; i < oldIds.length; i++) {
+			if (oldIds[i] != FREE) {
+				int j = find(oldIds[i]);
+				ids[j] = oldIds[i];
+				counts[j] = oldCounts[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import automail.SimulationEngine;
+import automail.SimulationResult;
+
+/**
+ * A BatchRunner runs the Simulation of several scenarios at once in one JVM,
+ * and prints one table with the results of every scenario.<br/><br/>
+ *
+ * A scenario is a properties file, or a directory with an automail.properties file in it,
+ * such as the config-r* directories. Scenarios run on a fixed number of worker threads
+ * with Log_Level=SUMMARY. A scenario that fails is reported in the table and does not stop the others.<br/><br/>
+ *
+ * Usage: java -cp &lt;classpath&gt; util.BatchRunner [-threads N] scenario...
+ */
+public class BatchRunner {
+
+    private static final String CONFIGURATION_FILE = "automail.properties";
+
+    private BatchRunner(){}
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> scenarios = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                scenarios.add(args[i]);
+            }
+        }
+        if (scenarios.isEmpty()) {
+            System.out.println("Usage: java util.BatchRunner [-threads N] scenario...");
+            return;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<String>> rows = new ArrayList<>();
+        for (String scenario : scenarios) {
+            rows.add(workers.submit(() -> runScenario(scenario)));
+        }
+        workers.shutdown();
+
+        System.out.printf("%-24s %8s %16s %8s %9s %8s %9s%n",
+                "Scenario", "Time", "Score", "Created", "Delivered", "Rejected", "Wall(ms)");
+        for (int i = 0; i < scenarios.size(); i++) {
+            try {
+                System.out.println(rows.get(i).get());
+            } catch (ExecutionException e) {
+                System.out.printf("%-24s failed: %s%n", scenarios.get(i), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Runs the Simulation of one scenario
+     * @param scenario a properties file, or a directory holding automail.properties
+     * @return the row of the results table for the scenario
+     */
+    private static String runScenario(String scenario) throws Exception {
+        File file = new File(scenario);
+        if (file.isDirectory()) {
+            file = new File(file, CONFIGURATION_FILE);
+        }
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("No such file " + file);
+        }
+        Configuration configuration = Configuration.load(file.getPath()).with("Log_Level", "SUMMARY");
+
+        long start = System.nanoTime();
+        SimulationResult result = new SimulationEngine(configuration).run();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return String.format("%-24s %8d %16.2f %8d %9d %8d %9d", scenario, result.getFinalTime(), result.getScore(),
+                result.getMailCreated(), result.getMailDelivered(), result.getMailRejected(), millis);
+    }
+
+}
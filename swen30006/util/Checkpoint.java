@@ -0,0 +1,79 @@
+package util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
+
+import automail.MailItem;
+import automail.PriorityMailItem;
+
+/**
+ * The binary format of a checkpoint of a Simulation, from which the Simulation can be resumed.<br/><br/>
+ *
+ * A checkpoint is written with DataOutput, big-endian: MAGIC, VERSION, the configuration it was
+ * written with, the time, then the state of the mail source, the mail pool, the robots and the
+ * delivery report, each written by its own writeState method. This class holds the format
+ * of the values they share.
+ */
+public final class Checkpoint {
+
+    /** "AMCP" */
+    public static final int MAGIC = 0x414D4350;
+    /** Changed whenever the format changes, so an old checkpoint is refused rather than misread */
+    public static final int VERSION = 1;
+
+    private Checkpoint(){}
+
+    /**
+     * Writes a mail item as its id, destination floor, arrival time, weight and priority level
+     * @param out where to write
+     * @param mailItem the mail item, or null
+     */
+    public static void writeMailItem(DataOutput out, MailItem mailItem) throws IOException {
+        if (mailItem == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(mailItem.getIndex());
+        out.writeInt(mailItem.getDestFloor());
+        out.writeInt(mailItem.getArrivalTime());
+        out.writeInt(mailItem.getWeight());
+        out.writeByte(mailItem instanceof PriorityMailItem ? ((PriorityMailItem) mailItem).getPriorityLevel() : 0);
+    }
+
+    /**
+     * Reads a mail item written by writeMailItem
+     * @param in where to read
+     * @return a new mail item equal to the one written, or null
+     */
+    public static MailItem readMailItem(DataInput in) throws IOException {
+        int id = in.readInt();
+        if (id < 0) {
+            return null;
+        }
+        int destination = in.readInt();
+        int arrivalTime = in.readInt();
+        int weight = in.readInt();
+        int priorityLevel = in.readByte();
+        return priorityLevel == 0
+                ? new MailItem(id, destination, arrivalTime, weight)
+                : new PriorityMailItem(id, destination, arrivalTime, weight, priorityLevel);
+    }
+
+    public static void writeBitSet(DataOutput out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    public static BitSet readBitSet(DataInput in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+}
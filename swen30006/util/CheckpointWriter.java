@@ -0,0 +1,89 @@
+package util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A CheckpointWriter writes checkpoints to a file on a background thread, so the Simulation
+ * only stops for as long as it takes to copy its state into memory.<br/><br/>
+ *
+ * Each checkpoint is written to a temporary file, forced to disk, then moved over the last
+ * checkpoint, so the file always holds a whole checkpoint even if the JVM dies while writing.
+ * At most one checkpoint is written at a time: a new one waits for the one before.
+ */
+public class CheckpointWriter {
+
+    private final Path file;
+    private final Path temporaryFile;
+    private final ExecutorService writer;
+    private Future<?> lastWrite;
+
+    /**
+     * @param file where the checkpoints are written
+     */
+    public CheckpointWriter(String file) {
+        this.file = Paths.get(file);
+        this.temporaryFile = Paths.get(file + ".tmp");
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CheckpointWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This method writes a checkpoint in the background, once the one before is written
+     * @param checkpoint the bytes of the checkpoint, which must not be changed afterwards
+     * @param length the number of bytes to write
+     */
+    public void write(byte[] checkpoint, int length) {
+        awaitLastWrite();
+        lastWrite = writer.submit(() -> {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(checkpoint, 0, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return null;
+        });
+    }
+
+    /**
+     * This method waits for the last checkpoint to be written, then stops the background thread
+     */
+    public void close() {
+        awaitLastWrite();
+        writer.shutdown();
+    }
+
+    private void awaitLastWrite() {
+        if (lastWrite == null) {
+            return;
+        }
+        try {
+            lastWrite.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new UncheckedIOException("Could not write checkpoint " + file,
+                    e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+        } finally {
+            lastWrite = null;
+        }
+    }
+}
@@ -6,35 +6,62 @@ import java.util.Properties;
 import java.util.logging.Logger;
 
 /**
- * A Configuration set up the variables before running the Simulation
+ * A Configuration set up the variables before running the Simulation.<br/><br/>
+ *
+ * The default configuration is read from automail.properties in the working directory.
+ * Other configurations can be read from any properties file, or derived from another
+ * configuration with some properties changed, so that several simulations can run
+ * with different configurations in the same JVM.
  */
 public class Configuration {
 
     private static Logger log = Logger.getLogger(Configuration.class.getName());
     private static final String CONFIGURATION_FILE = "automail.properties";
-    private static Properties automailProperties;
 
-    // use static initializer to read the configuration file when the class is loaded
-    private Configuration(){}
-    static {
-        automailProperties = new Properties();
-        // Default properties
-        // automailProperties.setProperty("Robots", "Big,Careful,Standard,Weak");
-        automailProperties.setProperty("Robots", "Standard");
-        automailProperties.setProperty("MailPool", "strategies.SimpleMailPool");
-        automailProperties.setProperty("Floors", "10");
-        automailProperties.setProperty("Fragile", "false");
-        automailProperties.setProperty("Mail_to_Create", "80");
-        automailProperties.setProperty("Last_Delivery_Time", "100");
+    /** The default values and the values read from the properties file */
+    private final Properties automailProperties;
+    /** The values changed by with(), which override everything else */
+    private final Properties changedProperties;
+    /** true if a Java system property overrides the value of the same name read from the file */
+    private final boolean systemOverrides;
+
+    private Configuration(Properties automailProperties, Properties changedProperties, boolean systemOverrides){
+        this.automailProperties = automailProperties;
+        this.changedProperties = changedProperties;
+        this.systemOverrides = systemOverrides;
+    }
+
+    /** Use Bill Pugh to implement Singleton */
+    private static class SingletonHelper{
+        // read the configuration file of the working directory when it is first used
+        private static final Configuration INSTANCE = load(CONFIGURATION_FILE);
+    }
+
+    /**
+     * This method gets the configuration read from automail.properties in the working directory
+     * @return the default Configuration
+     */
+    public static Configuration getDefault(){
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * This method reads a configuration from a properties file,
+     * on top of the default values of every property
+     * @param file the path of the properties file
+     * @return the Configuration read from the file
+     */
+    public static Configuration load(String file){
+        Properties automailProperties = defaults();
 
         // Read properties
         FileReader inStream = null;
         try {
-            inStream = new FileReader(CONFIGURATION_FILE);
+            inStream = new FileReader(file);
             automailProperties.load(inStream);
         }
         catch (IOException e) {
-            log.warning("Could not read file " + CONFIGURATION_FILE);
+            log.warning("Could not read file " + file);
         }
         finally {
             try {
@@ -43,19 +70,95 @@ public class Configuration {
                 }
             }
             catch (IOException e){
-                log.warning("Could not read file " + CONFIGURATION_FILE);
+                log.warning("Could not read file " + file);
             }
         }
+        return new Configuration(automailProperties, new Properties(), false);
+    }
+
+    /**
+     * This method makes a configuration from properties already read,
+     * on top of the default values of every property
+     * @param properties the values of the properties
+     * @return the Configuration of those properties
+     */
+    public static Configuration of(Properties properties){
+        Properties automailProperties = defaults();
+        automailProperties.putAll(properties);
+        return new Configuration(automailProperties, new Properties(), false);
+    }
+
+    private static Properties defaults(){
+        Properties automailProperties = new Properties();
+        // Default properties
+        // automailProperties.setProperty("Robots", "Big,Careful,Standard,Weak");
+        automailProperties.setProperty("Robots", "Standard");
+        automailProperties.setProperty("MailPool", "strategies.IndexedMailPool");
+        automailProperties.setProperty("Floors", "10");
+        automailProperties.setProperty("Fragile", "false");
+        automailProperties.setProperty("Mail_to_Create", "80");
+        automailProperties.setProperty("Last_Delivery_Time", "100");
+        automailProperties.setProperty("Log_Level", "TEXT");
+        automailProperties.setProperty("Robot_Threads", "1");
+        automailProperties.setProperty("Mail_Generation", "ALL");
+        automailProperties.setProperty("Mail_Generation_Threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors()));
+        automailProperties.setProperty("Mail_Log", "");
+        automailProperties.setProperty("Trace_File", "");
+        automailProperties.setProperty("Trace_Segment_MB", "64");
+        automailProperties.setProperty("Checkpoint_File", "");
+        automailProperties.setProperty("Checkpoint_Interval", "100000");
+        automailProperties.setProperty("Resume_From", "");
+        automailProperties.setProperty("Metrics_JMX", "");
+        return automailProperties;
+    }
+
+    /**
+     * This method gets a copy of this configuration with one property changed
+     * @param key the key of the property to change
+     * @param value the new value of the property
+     * @return a new Configuration, this one is left unchanged
+     */
+    public Configuration with(String key, String value){
+        Properties changed = new Properties();
+        changed.putAll(changedProperties);
+        changed.setProperty(key, value);
+        return new Configuration(automailProperties, changed, systemOverrides);
+    }
 
+    /**
+     * This method gets a copy of this configuration in which a Java system property of the same name,
+     * e.g. -DRobots=10, overrides the configuration file. The Simulation run from the command line uses it.
+     * Runners of many simulations in one JVM do not, so -D cannot give all their scenarios the same
+     * Trace_File or Checkpoint_File.
+     * @return a new Configuration, this one is left unchanged
+     */
+    public Configuration withSystemProperties(){
+        return new Configuration(automailProperties, changedProperties, true);
     }
 
     /**
-     * This method gets a value of the Configuration property
+     * This method gets a value of the Configuration property.
+     * A value changed with with() overrides the configuration file, and so does a Java system property
+     * of the same name in a configuration made with withSystemProperties().
      * @param key the key value of the property value
      * @return the value of the Configuration property looked up by the key
      */
-    public static String getProperty(String key){
-        return automailProperties.getProperty(key);
+    public String getProperty(String key){
+        String value = automailProperties.getProperty(key);
+        if (systemOverrides) {
+            value = System.getProperty(key, value);
+        }
+        return changedProperties.getProperty(key, value);
+    }
+
+    /**
+     * This method gets a value of the Configuration property as an int
+     * @param key the key value of the property value
+     * @return the int value of the Configuration property looked up by the key
+     */
+    public int getIntProperty(String key){
+        return Integer.parseInt(getProperty(key));
     }
 
 }
@@ -0,0 +1,69 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for the delivery of a mail item
+ */
+@Name("automail.Delivery")
+@Label("Delivery")
+@Category({"Automail", "Robots"})
+@Description("A mail item delivered to its destination floor")
+@Enabled(false)
+@StackTrace(false)
+public class DeliveryEvent extends jdk.jfr.Event {
+
+    /** Asked whether the event is enabled, and never committed */
+    private static final DeliveryEvent PROBE = new DeliveryEvent();
+
+    @Label("Time")
+    @Description("The simulation time of the delivery")
+    int time;
+
+    @Label("Mail Item")
+    @Description("The index of the mail item")
+    int mailItem;
+
+    @Label("Floor")
+    @Description("The destination floor of the mail item")
+    int floor;
+
+    @Label("Priority Level")
+    @Description("The priority level of the mail item, 0 for ordinary mail")
+    int priorityLevel;
+
+    @Label("Latency")
+    @Description("The units of time from the arrival of the mail item to its delivery")
+    int latency;
+
+    /**
+     * @return true if the recordings running enable this event
+     */
+    public static boolean isTypeEnabled() {
+        return PROBE.isEnabled();
+    }
+
+    /**
+     * This method records the event, if it is enabled
+     * @param time the simulation time of the delivery
+     * @param mailItem the index of the mail item
+     * @param floor the destination floor of the mail item
+     * @param priorityLevel the priority level of the mail item, 0 for ordinary mail
+     * @param latency the units of time from the arrival of the mail item to its delivery
+     */
+    public void commit(int time, int mailItem, int floor, int priorityLevel, int latency) {
+        if (shouldCommit()) {
+            this.time = time;
+            this.mailItem = mailItem;
+            this.floor = floor;
+            this.priorityLevel = priorityLevel;
+            this.latency = latency;
+            commit();
+        }
+    }
+}
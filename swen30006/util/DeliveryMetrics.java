@@ -0,0 +1,238 @@
+package util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import automail.Clock;
+import automail.Robot;
+import automail.RobotFleet;
+
+/**
+ * DeliveryMetrics keeps the live numbers of a Simulation while it runs: the delivery latency,
+ * from arrival to delivery, in a {@link LatencyHistogram} per priority level, the backlog of the
+ * mail pool, the robots idle, delivering and returning, the deliveries by team size and the rejections.<br/><br/>
+ *
+ * {@link ReportDelivery} and the mail pool update it as they go, without allocating.
+ * The robot counts are taken from the fleet when they are read, so stepping the robots
+ * costs nothing more. Registered with register, it is published as a platform MBean
+ * named automail:type=DeliveryMetrics,name=&lt;name&gt;, which any JMX client can read during the run.<br/><br/>
+ *
+ * Priority levels are counted in tens: ordinary mail, then levels 1-10, 11-20, ... 91-100.
+ */
+public class DeliveryMetrics implements DeliveryMetricsMBean {
+
+    private static Logger log = Logger.getLogger(DeliveryMetrics.class.getName());
+
+    /** The number of histograms by priority level: ordinary mail and ten ranges of ten levels */
+    private static final int PRIORITY_RANGES = 11;
+
+    private final Clock clock;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram[] latencyByPriority = new LatencyHistogram[PRIORITY_RANGES];
+    private volatile long rejected;
+    private volatile int poolBacklog;
+    private volatile long individualDeliveries;
+    private volatile long pairDeliveries;
+    private volatile long tripleDeliveries;
+    private volatile RobotFleet fleet;
+    private ObjectName name;
+
+    /**
+     * @param clock the clock of the Simulation
+     */
+    public DeliveryMetrics(Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < PRIORITY_RANGES; i++) {
+            latencyByPriority[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * This method sets the fleet whose robots are counted
+     * @param fleet the robots of the Simulation
+     */
+    public void observe(RobotFleet fleet) {
+        this.fleet = fleet;
+    }
+
+    /**
+     * This method counts a delivery
+     * @param latency the time from the arrival of the mail item to its delivery
+     * @param priorityLevel the priority level of the mail item, 0 for ordinary mail
+     * @param weight the weight of the mail item, which decides the size of the team delivering it
+     */
+    public void delivered(int latency, int priorityLevel, int weight) {
+        this.latency.record(latency);
+        latencyByPriority[range(priorityLevel)].record(latency);
+        if (weight <= Robot.INDIVIDUAL_MAX_WEIGHT) {
+            individualDeliveries = individualDeliveries + 1;
+        } else if (weight <= Robot.PAIR_MAX_WEIGHT) {
+            pairDeliveries = pairDeliveries + 1;
+        } else {
+            tripleDeliveries = tripleDeliveries + 1;
+        }
+    }
+
+    /**
+     * This method counts a mail item rejected by the mail pool
+     */
+    public void rejected() {
+        rejected = rejected + 1;
+    }
+
+    /**
+     * This method sets the number of mail items waiting in the mail pool
+     * @param backlog the size of the pool
+     */
+    public void setPoolBacklog(int backlog) {
+        poolBacklog = backlog;
+    }
+
+    private static int range(int priorityLevel) {
+        return Math.min(PRIORITY_RANGES - 1, Math.max(0, (priorityLevel + 9) / 10));
+    }
+
+    /**
+     * This method publishes the metrics as a platform MBean.
+     * If that fails, it is reported and the Simulation runs on without it.
+     * @param name the name of the MBean, unique among the Simulations of the JVM
+     */
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("automail:type=DeliveryMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+        } catch (JMException e) {
+            log.warning("Could not publish the delivery metrics as " + name + ": " + e);
+        }
+    }
+
+    /**
+     * This method withdraws the MBean, if the metrics were published
+     */
+    public void unregister() {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            // Already gone
+        }
+        name = null;
+    }
+
+    @Override
+    public int getTime() {
+        return clock.Time();
+    }
+
+    @Override
+    public long getMailDelivered() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getMailRejected() {
+        return rejected;
+    }
+
+    @Override
+    public int getPoolBacklog() {
+        return poolBacklog;
+    }
+
+    @Override
+    public int getRobotsIdle() {
+        return countRobots(Robot.RobotState.WAITING);
+    }
+
+    @Override
+    public int getRobotsDelivering() {
+        return countRobots(Robot.RobotState.DELIVERING);
+    }
+
+    @Override
+    public int getRobotsReturning() {
+        return countRobots(Robot.RobotState.RETURNING);
+    }
+
+    private int countRobots(Robot.RobotState state) {
+        RobotFleet robots = fleet;
+        return robots == null ? 0 : robots.countRobots(state);
+    }
+
+    @Override
+    public long getIndividualDeliveries() {
+        return individualDeliveries;
+    }
+
+    @Override
+    public long getPairDeliveries() {
+        return pairDeliveries;
+    }
+
+    @Override
+    public long getTripleDeliveries() {
+        return tripleDeliveries;
+    }
+
+    @Override
+    public double getLatencyMean() {
+        return latency.getMean();
+    }
+
+    @Override
+    public long getLatencyP50() {
+        return latency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getLatencyP90() {
+        return latency.getValueAtPercentile(90);
+    }
+
+    @Override
+    public long getLatencyP99() {
+        return latency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public int getLatencyMax() {
+        return latency.getMax();
+    }
+
+    @Override
+    public String[] getLatencyByPriority() {
+        ArrayList<String> lines = new ArrayList<>();
+        for (int i = 0; i < PRIORITY_RANGES; i++) {
+            LatencyHistogram histogram = latencyByPriority[i];
+            if (histogram.getCount() > 0) {
+                lines.add(String.format("%s: count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+                        i == 0 ? "ordinary" : "priority " + (10 * i - 9) + "-" + (10 * i),
+                        histogram.getCount(), histogram.getMean(), histogram.getValueAtPercentile(50),
+                        histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99), histogram.getMax()));
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public long latencyPercentile(int priorityLevel, double percentile) {
+        return latencyByPriority[range(priorityLevel)].getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @param priorityLevel the priority level of the mail items, 0 for ordinary mail
+     * @return the latency histogram of the mail items of that range of priority levels
+     */
+    public LatencyHistogram getLatency(int priorityLevel) {
+        return latencyByPriority[range(priorityLevel)];
+    }
+}
@@ -0,0 +1,62 @@
+package util;
+
+/**
+ * The attributes and operations of {@link DeliveryMetrics} published over JMX
+ */
+public interface DeliveryMetricsMBean {
+
+    /** @return the current time of the Simulation */
+    int getTime();
+
+    /** @return the number of mail items delivered */
+    long getMailDelivered();
+
+    /** @return the number of mail items rejected by the mail pool for being too heavy */
+    long getMailRejected();
+
+    /** @return the number of mail items waiting in the mail pool */
+    int getPoolBacklog();
+
+    /** @return the number of robots waiting in the mail room */
+    int getRobotsIdle();
+
+    /** @return the number of robots on their way to deliver */
+    int getRobotsDelivering();
+
+    /** @return the number of robots on their way back to the mail room */
+    int getRobotsReturning();
+
+    /** @return the number of mail items delivered by one robot */
+    long getIndividualDeliveries();
+
+    /** @return the number of mail items delivered by a team of two robots */
+    long getPairDeliveries();
+
+    /** @return the number of mail items delivered by a team of three robots */
+    long getTripleDeliveries();
+
+    /** @return the mean delivery latency of all mail items */
+    double getLatencyMean();
+
+    /** @return the median delivery latency of all mail items */
+    long getLatencyP50();
+
+    /** @return the 90th percentile of the delivery latency of all mail items */
+    long getLatencyP90();
+
+    /** @return the 99th percentile of the delivery latency of all mail items */
+    long getLatencyP99();
+
+    /** @return the longest delivery latency */
+    int getLatencyMax();
+
+    /** @return one line per priority level with any deliveries: its count, mean, percentiles and maximum */
+    String[] getLatencyByPriority();
+
+    /**
+     * @param priorityLevel the priority level of the mail items, 0 for ordinary mail
+     * @param percentile the percentage, from 0 to 100
+     * @return the percentile of the delivery latency of the mail items of that priority level
+     */
+    long latencyPercentile(int priorityLevel, double percentile);
+}
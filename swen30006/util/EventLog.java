@@ -0,0 +1,389 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+
+/**
+ * An EventLog records the events of the Simulation and writes them out on a background thread.<br/><br/>
+ *
+ * The simulation thread only copies the fields of an event into a slot of a preallocated
+ * ring buffer. Formatting and writing happen later on the writer thread, so the step loop
+ * does not wait on String.format or stdout. If the buffer is full, the simulation thread
+ * waits for the writer to catch up, so no event is dropped.<br/><br/>
+ *
+ * Neither thread spins. The writer parks once the buffer is empty, and the simulation thread
+ * unparks it when it records an event while the writer is parked. The simulation thread parks
+ * when the buffer is full, and the writer unparks it once half of the buffer is free again.<br/><br/>
+ *
+ * The Log_Level property chooses what is written:<br/>
+ * - SUMMARY: no events, only the results at the end of the Simulation<br/>
+ * - TEXT: every event in the text format of the Simulation (default)<br/>
+ * - COMPACT: every event as one tab separated line, for other programs to read<br/><br/>
+ *
+ * Each Simulation has its own EventLog and writer thread.<br/><br/>
+ *
+ * With a {@link TraceRecorder}, every event is also written to a binary trace on the simulation
+ * thread, at any level. {@link TraceReader} turns the trace back into the TEXT or COMPACT format.
+ */
+public class EventLog {
+
+    private static Logger log = Logger.getLogger(EventLog.class.getName());
+
+    /** Levels of detail written by the log */
+    public enum Level { SUMMARY, TEXT, COMPACT }
+
+    /** Types of events recorded by the log. END is only recorded in the trace. */
+    public enum EventType { ARRIVAL, RETURN, REJECTION, STATE_CHANGE, DISPATCH, DELIVERY, END }
+
+    /** The number of slots in the ring buffer, a power of two */
+    private static final int CAPACITY = 1 << 16;
+    private static final int MASK = CAPACITY - 1;
+
+    /** A log that records nothing, which any number of Simulations may share, such as forks */
+    public static final EventLog NONE = new EventLog(Level.SUMMARY, OutputStream.nullOutputStream());
+
+    /** A slot of the ring buffer, reused for every event written to it */
+    static class Event {
+        EventType type;
+        int time;
+        /** The index of the robot, or -1 */
+        int robot;
+        int tube;
+        Robot.RobotState fromState;
+        Robot.RobotState toState;
+        int count;
+        MailItem mailItem;
+    }
+
+    private final Level level;
+    private final Event[] events;
+    /** The number of events recorded, written only by the simulation thread */
+    private volatile long head = 0;
+    /** The number of events written out, written only by the writer thread */
+    private volatile long tail = 0;
+    private volatile boolean closed = false;
+    /** true while the writer is about to park or parked, so an event recorded must unpark it */
+    private volatile boolean writerParked = false;
+    /** The simulation thread while it is parked on a full buffer, or null */
+    private volatile Thread parkedRecorder;
+
+    private final PrintWriter out;
+    private final Thread writer;
+    /** The binary trace every event is also recorded in, or null */
+    private final TraceRecorder trace;
+
+    /**
+     * Starts the writer thread of a new log, unless the level is SUMMARY
+     * @param level the level of detail to write
+     * @param outStream where the events are written
+     */
+    public EventLog(Level level, OutputStream outStream){
+        this(level, outStream, null);
+    }
+
+    /**
+     * Starts the writer thread of a new log, unless the level is SUMMARY
+     * @param level the level of detail to write
+     * @param outStream where the events are written
+     * @param trace the binary trace to record every event in as well, or null for none.
+     * It is closed with the log.
+     */
+    public EventLog(Level level, OutputStream outStream, TraceRecorder trace){
+        this.level = level;
+        this.trace = trace;
+        // Nothing is recorded at the SUMMARY level, so it needs no buffer
+        this.events = new Event[level == Level.SUMMARY ? 0 : CAPACITY];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new Event();
+        }
+        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(outStream), 1 << 16));
+        this.writer = new Thread(this::drain, "EventLog-writer");
+        this.writer.setDaemon(true);
+        if (level != Level.SUMMARY) {
+            this.writer.start();
+        }
+    }
+
+    /**
+     * This method gets the level named by a Log_Level property
+     * @param value the value of the Log_Level property
+     * @return the level of that name, or TEXT if there is none
+     */
+    public static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            log.warning("Unknown Log_Level " + value + ", using " + Level.TEXT);
+            return Level.TEXT;
+        }
+    }
+
+    /**
+     * This method gets the level of detail of the log
+     * @return the level chosen by the Log_Level property
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Records a mail item newly arrived at the mail pool
+     * @param time the current time
+     * @param mailItem the mail item arrived
+     */
+    public void arrival(int time, MailItem mailItem) {
+        record(EventType.ARRIVAL, time, -1, 0, null, null, 0, mailItem);
+    }
+
+    /**
+     * Records a mail item brought back to the mail pool in the tube of a robot
+     * @param time the current time
+     * @param mailItem the mail item returned
+     */
+    public void returned(int time, MailItem mailItem) {
+        record(EventType.RETURN, time, -1, 0, null, null, 0, mailItem);
+    }
+
+    /**
+     * Records a mail item rejected by the mail pool
+     * @param time the current time
+     * @param mailItem the mail item rejected
+     */
+    public void rejection(int time, MailItem mailItem) {
+        record(EventType.REJECTION, time, -1, 0, null, null, 0, mailItem);
+    }
+
+    /**
+     * Records a robot changing state
+     * @param time the current time
+     * @param robot the index of the robot
+     * @param tube 1 if the tube of the robot is filled, else 0
+     * @param fromState the state the robot leaves
+     * @param toState the state the robot enters
+     */
+    public void stateChange(int time, int robot, int tube, Robot.RobotState fromState, Robot.RobotState toState) {
+        record(EventType.STATE_CHANGE, time, robot, tube, fromState, toState, 0, null);
+    }
+
+    /**
+     * Records a robot setting off to deliver a mail item
+     * @param time the current time
+     * @param robot the index of the robot
+     * @param tube 1 if the tube of the robot is filled, else 0
+     * @param mailItem the mail item to deliver
+     */
+    public void dispatch(int time, int robot, int tube, MailItem mailItem) {
+        record(EventType.DISPATCH, time, robot, tube, null, null, 0, mailItem);
+    }
+
+    /**
+     * Records a mail item delivered
+     * @param time the current time
+     * @param count the number of mail items delivered so far
+     * @param mailItem the mail item delivered
+     */
+    public void delivery(int time, int count, MailItem mailItem) {
+        record(EventType.DELIVERY, time, -1, 0, null, null, count, mailItem);
+    }
+
+    /**
+     * Records the end of the Simulation in the trace, if there is one
+     * @param time the final time
+     */
+    public void end(int time) {
+        if (trace != null) {
+            trace.record(EventType.END, time, -1, 0, null, null, 0, null);
+        }
+    }
+
+    /**
+     * Copies an event into the next slot of the ring buffer,
+     * waiting for the writer if the buffer is full
+     */
+    private void record(EventType type, int time, int robot, int tube,
+                        Robot.RobotState fromState, Robot.RobotState toState, int count, MailItem mailItem) {
+        if (trace != null) {
+            trace.record(type, time, robot, tube, fromState, toState, count, mailItem);
+        }
+        if (level == Level.SUMMARY) {
+            return;
+        }
+        long next = head;
+        if (next - tail >= CAPACITY) {
+            awaitSpace(next);
+        }
+        Event event = events[(int) next & MASK];
+        event.type = type;
+        event.time = time;
+        event.robot = robot;
+        event.tube = tube;
+        event.fromState = fromState;
+        event.toState = toState;
+        event.count = count;
+        event.mailItem = mailItem;
+        head = next + 1; // publish the event to the writer
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Parks the simulation thread until the writer has freed half of the buffer
+     * @param next the number of events recorded
+     */
+    private void awaitSpace(long next) {
+        parkedRecorder = Thread.currentThread();
+        // The writer sees parkedRecorder before it frees the space checked here, or this sees the space
+        while (next - tail >= CAPACITY) {
+            LockSupport.park(this);
+        }
+        parkedRecorder = null;
+    }
+
+    /**
+     * The writer thread: formats and writes events until the log is closed and empty
+     */
+    private void drain() {
+        while (true) {
+            long next = tail;
+            if (next == head) {
+                // head is read again after closed, as the last events are recorded before closing
+                if (closed && next == head) {
+                    break;
+                }
+                out.flush();
+                writerParked = true;
+                // The simulation thread sees writerParked after it publishes an event, or this sees the event
+                if (next == head && !closed) {
+                    LockSupport.park(this);
+                }
+                writerParked = false;
+                continue;
+            }
+            Event event = events[(int) next & MASK];
+            write(level, event, out);
+            event.mailItem = null; // do not keep the mail item reachable
+            tail = next + 1; // hand the slot back to the simulation thread
+            Thread recorder = parkedRecorder;
+            if (recorder != null && head - tail <= CAPACITY / 2) {
+                LockSupport.unpark(recorder);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes an event in the format of a level
+     * @param level TEXT or COMPACT
+     * @param event the event to write
+     * @param out where to write it
+     */
+    static void write(Level level, Event event, PrintWriter out) {
+        if (level == Level.COMPACT) {
+            writeCompact(event, out);
+            return;
+        }
+        switch (event.type) {
+            case ARRIVAL:
+                out.printf("T: %3d > new addToPool [%s]%n", event.time, event.mailItem.toString());
+                break;
+            case RETURN:
+                out.printf("T: %3d > old addToPool [%s]%n", event.time, event.mailItem.toString());
+                break;
+            case REJECTION:
+                out.printf("T: %3d > Item too heavy. Rejected addToPool [%s]%n",
+                        event.time, event.mailItem.toString());
+                break;
+            case STATE_CHANGE:
+                out.printf("T: %3d > %7s changed from %s to %s%n",
+                        event.time, robotWithTube(event), event.fromState, event.toState);
+                break;
+            case DISPATCH:
+                out.printf("T: %3d > %7s-> [%s]%n", event.time, robotWithTube(event), event.mailItem.toString());
+                break;
+            case DELIVERY:
+                out.printf("T: %3d > Delivered(%4d) [%s]%n", event.time, event.count, event.mailItem.toString());
+                break;
+            case END:
+                break;
+        }
+    }
+
+    /**
+     * Writes an event as tab separated fields: time, type, then<br/>
+     * - robot id, tube and mail item id, destination for a dispatch<br/>
+     * - robot id, tube and the two states for a state change<br/>
+     * - delivered count, mail item id, destination for a delivery<br/>
+     * - mail item id, destination, arrival time, weight, priority for the others
+     */
+    private static void writeCompact(Event event, PrintWriter out) {
+        if (event.type == EventType.END) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(64);
+        line.append(event.time).append('\t').append(event.type);
+        switch (event.type) {
+            case STATE_CHANGE:
+                line.append('\t').append('R').append(event.robot).append('\t').append(event.tube)
+                        .append('\t').append(event.fromState).append('\t').append(event.toState);
+                break;
+            case DISPATCH:
+                line.append('\t').append('R').append(event.robot).append('\t').append(event.tube)
+                        .append('\t').append(event.mailItem.getIndex())
+                        .append('\t').append(event.mailItem.getDestFloor());
+                break;
+            case DELIVERY:
+                line.append('\t').append(event.count)
+                        .append('\t').append(event.mailItem.getIndex())
+                        .append('\t').append(event.mailItem.getDestFloor());
+                break;
+            default:
+                MailItem mailItem = event.mailItem;
+                line.append('\t').append(mailItem.getIndex())
+                        .append('\t').append(mailItem.getDestFloor())
+                        .append('\t').append(mailItem.getArrivalTime())
+                        .append('\t').append(mailItem.getWeight())
+                        .append('\t').append(mailItem instanceof PriorityMailItem ?
+                                ((PriorityMailItem) mailItem).getPriorityLevel() : 0);
+                break;
+        }
+        out.println(line);
+    }
+
+    /** Example: R(1) means tube is also filled before delivery */
+    private static String robotWithTube(Event event) {
+        return String.format("R%d(%1d)", event.robot, event.tube);
+    }
+
+    /**
+     * This method waits for every recorded event to be written out.
+     * It is called before the results of the Simulation are printed.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (trace != null) {
+            trace.close();
+        }
+        if (level == Level.SUMMARY) {
+            return;
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package util;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+
+/**
+ * FlightRecording tells the Simulation whether Java Flight Recorder is running, so it only makes
+ * its events ({@link TickEvent}, {@link PoolStepEvent}, {@link RobotStateEvent},
+ * {@link TeamDispatchEvent} and {@link DeliveryEvent}) once a recording could take them.<br/><br/>
+ *
+ * Loading the first event class sets up the event machinery of the JVM, which takes a few hundred
+ * milliseconds, so a run without a recording never loads one. A recording started later,
+ * e.g. with jcmd JFR.start, is noticed from then on.<br/><br/>
+ *
+ * Once a recording is running, each call site also asks its event type whether it is enabled
+ * before making an event. The events are disabled unless the settings of a recording, such as
+ * automail.jfc, enable them, so a recording with a JDK profile alone makes none of them.
+ */
+public final class FlightRecording {
+
+    private static volatile boolean on;
+
+    static {
+        if (FlightRecorder.isInitialized()) {
+            on = true;
+        } else {
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recorderInitialized(FlightRecorder recorder) {
+                    on = true;
+                }
+            });
+        }
+    }
+
+    private FlightRecording() {
+    }
+
+    /**
+     * @return true once Java Flight Recorder has been started in this JVM
+     */
+    public static boolean isOn() {
+        return on;
+    }
+
+    /**
+     * @return a TickEvent begun now, or null if no recording enables it
+     */
+    public static TickEvent beginTick() {
+        if (!on || !TickEvent.isTypeEnabled()) {
+            return null;
+        }
+        TickEvent event = new TickEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return a PoolStepEvent begun now, or null if no recording enables it
+     */
+    public static PoolStepEvent beginPoolStep() {
+        if (!on || !PoolStepEvent.isTypeEnabled()) {
+            return null;
+        }
+        PoolStepEvent event = new PoolStepEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,67 @@
+package util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import automail.Clock;
+import automail.PriorityMailItem;
+import strategies.IMailPool;
+
+/**
+ * A mail source brings mail items into the Automail system as they arrive,
+ * one unit of time at a time.<br/><br/>
+ *
+ * {@link MailGenerator} makes random mail items; {@link MailLogReplay} reads them from a log of real arrivals.
+ */
+public interface IMailSource {
+
+    /**
+     * This method prepares the mail items before the Simulation starts
+     */
+    void generateAllMail();
+
+    /**
+     * This method adds the mail items arriving at the current time to the mail pool
+     * @return a priority mail item that arrived, or null if none did
+     */
+    PriorityMailItem step();
+
+    /**
+     * This method gets the time of the next mail items to arrive
+     * @return the earliest arrival time from the current time on, or -1 if no more mail will arrive
+     */
+    int getNextArrivalTime();
+
+    /**
+     * This method gets the number of mail items created. It must count the mail items
+     * still to arrive as well, or at least one while any are, so that the Simulation
+     * does not end before they are delivered.
+     * @return the number of mail items created
+     */
+    int getMailCreated();
+
+    /**
+     * This method writes what the mail source needs to carry on from the current time
+     * to a checkpoint, between steps
+     * @param out where to write
+     */
+    void writeState(DataOutput out) throws IOException;
+
+    /**
+     * This method restores the state written by writeState, in place of generateAllMail
+     * @param in where to read
+     * @throws IOException if the checkpoint cannot be read or was written by another kind of mail source
+     */
+    void readState(DataInput in) throws IOException;
+
+    /**
+     * This method makes an independent copy of the mail source for a fork of the Simulation,
+     * which brings in the same mail items from then on
+     * @param mailPool the mail pool of the fork
+     * @param clock the clock of the fork
+     * @param eventLog the event log of the fork
+     * @return the copy
+     */
+    IMailSource fork(IMailPool mailPool, Clock clock, EventLog eventLog);
+}
@@ -0,0 +1,109 @@
+package util;
+
+/**
+ * A LatencyHistogram counts values, such as delivery latencies, in log-linear buckets
+ * in the way of an HDR histogram, so any percentile can be read back to within 1%.<br/><br/>
+ *
+ * Values below 2 * SUB_BUCKETS are counted exactly. Above that, each power of two is split
+ * into SUB_BUCKETS buckets of equal width, so a bucket is never wider than 1/SUB_BUCKETS of
+ * its values. Recording a value costs a few shifts and an increment, and allocates nothing.<br/><br/>
+ *
+ * One thread records values; any thread may read them. The count is written last,
+ * so a reader sees every value counted by the time of the count it reads.
+ */
+public class LatencyHistogram {
+
+    /** The number of buckets a power of two is split into: 128, so a bucket is under 0.8% of its values wide */
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Values below this are counted in buckets of width 1 */
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    /** Enough buckets for every non-negative int */
+    private static final int BUCKETS = LINEAR + (31 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private volatile long count;
+    private long sum;
+    private int max;
+
+    /**
+     * This method counts a value
+     * @param value the value, clamped to 0 if negative
+     */
+    public void record(int value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucket(value)]++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+        count = count + 1;
+    }
+
+    private static int bucket(int value) {
+        if (value < LINEAR) {
+            return value;
+        }
+        // The value is in [SUB_BUCKETS << shift, 2 * SUB_BUCKETS << shift)
+        int shift = 31 - Integer.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the highest value counted in a bucket
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+        long lowest = (long) ((bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * @return the number of values counted
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean of the values counted, or 0 if there are none
+     */
+    public double getMean() {
+        long n = count;
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    /**
+     * @return the largest value counted, or 0 if there are none
+     */
+    public int getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    /**
+     * This method gets the value below or at which a percentage of the values counted are
+     * @param percentile the percentage, from 0 to 100
+     * @return the highest value of the bucket the percentile falls in, at most the largest
+     * value counted, or 0 if there are none
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count;
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(highestValue(bucket), max);
+            }
+        }
+        return max;
+    }
+}
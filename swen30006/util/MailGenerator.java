@@ -1,147 +1,257 @@
 package util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
-import java.util.logging.Logger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
 
 import automail.Building;
 import automail.Clock;
 import automail.MailItem;
+import automail.MailStore;
 import automail.PriorityMailItem;
 import strategies.IMailPool;
 
 /**
- * This class is used to generate mail items and load them into the Automail system.
+ * This class is used to generate mail items and load them into the Automail system.<br/><br/>
+ *
+ * With Mail_Generation=ALL (default) every mail item is generated before the Simulation starts.
+ * With Mail_Generation=STREAM the mail items of a unit of time are generated when they arrive,
+ * so memory grows with the mail waiting in the pool instead of with all the mail of the day.
+ * With Mail_Generation=SPLIT all mail items are generated up front in parallel on
+ * Mail_Generation_Threads threads. Each block of mail items draws from its own stream split
+ * from the seed, so a seed gives the same mail items on any number of threads.<br/><br/>
+ *
+ * The mail items follow the same distribution in all three, but a seed gives different
+ * mail items in each. ALL gives the mail items of the original Simulation for every seed.<br/><br/>
+ *
+ * ALL and SPLIT keep the mail items waiting to arrive packed in a {@link MailStore}, indexed
+ * by arrival time. A MailItem is only made for a mail item in the unit of time it arrives.<br/><br/>
+ *
+ * A checkpoint of ALL or SPLIT holds the seed and the arrival times still to come, and the mail items
+ * are generated again on resume. A checkpoint of STREAM holds the position of the random stream.
  */
-public class MailGenerator{
+public class MailGenerator implements IMailSource {
 
-    private static Logger log = Logger.getLogger(MailGenerator.class.getName());
-    private static MailGenerator INSTANCE = null;
-    private static int MAIL_TO_CREATE;
-    private static int MAIL_MAX_WEIGHT;
-    private static int mailCreated;
+    /** How the mail items are generated */
+    public enum Generation {
+        /** All mail items up front, in the order of the original Simulation */
+        ALL,
+        /** The mail items of each unit of time as they arrive */
+        STREAM,
+        /** All mail items up front, in parallel blocks with a random stream each */
+        SPLIT
+    }
+
+    /** Split: the number of mail items drawn from one random stream */
+    private static final int SPLIT_BLOCK = 4096;
+
+    private int MAIL_TO_CREATE;
+    private final int MAIL_MAX_WEIGHT;
+    private int mailCreated;
 
-    private static Random random;
+    private final UnsynchronizedRandom random;
     /** This seed is used to make the behaviour deterministic */
-    
-    private static boolean complete;
-    private static IMailPool mailPool;
-    private static Map<Integer,ArrayList<MailItem>> allMail;
-
-    /** Use Bill Pugh to implement Singleton */
-    public static MailGenerator getInstance(
-            int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed) {
-        if (INSTANCE == null) {
-            synchronized (MailGenerator.class) {
-                INSTANCE = new MailGenerator(mailToCreate, mailMaxWeight, mailPool, seed);
-            }
-        }
-        return INSTANCE;
-    }
+    private final long seed;
+    /** The state of random once MAIL_TO_CREATE is drawn, where generating all mail starts from */
+    private long startState;
+    /** Split: the stream the random stream of each block is split from */
+    private SplittableRandom splitRandom;
+    /** Split: the number of threads generating mail */
+    private final int threads;
 
-    public static MailGenerator getInstance() {
-        if (INSTANCE == null) {
-            log.warning("Could not get the instance before initialisation");
-        }
-        return INSTANCE;
-    }
+    private boolean complete;
+    private final Generation generation;
+    private final IMailPool mailPool;
+    private final Building building;
+    private final Clock clock;
+    private final EventLog eventLog;
+    /** The mail items generated up front, with their ids as handles */
+    private MailStore allMail;
+    /** The handles of allMail in order of arrival time, then id */
+    private int[] handlesByArrival;
+    /** The position in handlesByArrival of the first mail item of each arrival time */
+    private int[] arrivalStart;
+    /** The arrival times whose mail items are still to arrive */
+    private BitSet pendingArrivals;
+    /** The arrival times that already have a priority mail item */
+    private final BitSet priorityArrivals;
+
+    /** Streaming: the next arrival time with mail items, or -1 if no more mail will arrive */
+    private int nextArrivalTime = -1;
+    /** Streaming: the number of mail items arriving at nextArrivalTime */
+    private int nextArrivalCount;
+    /** Streaming: the mail items not yet given an arrival time */
+    private int mailUnscheduled;
 
     /**
      * Constructor for mail generation
      * @param mailToCreate roughly how many mail items to create
+     * @param mailMaxWeight the maximum weight of a mail item
      * @param mailPool where mail items go on arrival
      * @param seed random seed for generating mail
+     * @param building the building the mail is delivered in
+     * @param clock the clock of the Simulation
+     * @param eventLog records the arrival of mail items
+     * @param generation whether to generate all mail items up front, as they arrive, or up front in parallel
+     * @param threads the number of threads generating mail in parallel
      */
-    private MailGenerator(int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed){
+    public MailGenerator(int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed,
+                         Building building, Clock clock, EventLog eventLog, Generation generation, int threads){
         if(seed.containsKey(true)){
-        	this.random = new Random((long) seed.get(true));
+        	this.seed = seed.get(true);
         }
         else{
-        	this.random = new Random();	
+        	// Kept, so a checkpoint can generate the same mail again
+        	this.seed = new Random().nextLong();
         }
+        this.random = new UnsynchronizedRandom(this.seed);
+        this.splitRandom = new SplittableRandom(this.seed);
+        this.threads = threads;
         // Vary arriving mail by +/-20%
         MAIL_TO_CREATE = mailToCreate*4/5 + random.nextInt(mailToCreate*2/5);
+        startState = random.getState();
         MAIL_MAX_WEIGHT = mailMaxWeight;
         // System.out.println("Num Mail Items: "+MAIL_TO_CREATE);
         mailCreated = 0;
         complete = false;
-        allMail = new HashMap<Integer,ArrayList<MailItem>>();
+        priorityArrivals = new BitSet();
+        pendingArrivals = new BitSet();
+        this.generation = generation;
         this.mailPool = mailPool;
+        this.building = building;
+        this.clock = clock;
+        this.eventLog = eventLog;
     }
 
     /**
-     * @return a new mail item that needs to be delivered
+     * A fork of a mail generator. The mail items generated up front are shared, as they
+     * are not changed once generated; the arrival times to come and the random stream are copied.
+     */
+    private MailGenerator(MailGenerator generator, IMailPool mailPool, Clock clock, EventLog eventLog) {
+        this.MAIL_TO_CREATE = generator.MAIL_TO_CREATE;
+        this.MAIL_MAX_WEIGHT = generator.MAIL_MAX_WEIGHT;
+        this.mailCreated = generator.mailCreated;
+        this.random = new UnsynchronizedRandom(generator.random);
+        this.seed = generator.seed;
+        this.startState = generator.startState;
+        this.splitRandom = generator.splitRandom;
+        this.threads = generator.threads;
+        this.complete = generator.complete;
+        this.generation = generator.generation;
+        this.mailPool = mailPool;
+        this.building = generator.building;
+        this.clock = clock;
+        this.eventLog = eventLog;
+        this.allMail = generator.allMail;
+        this.handlesByArrival = generator.handlesByArrival;
+        this.arrivalStart = generator.arrivalStart;
+        this.pendingArrivals = (BitSet) generator.pendingArrivals.clone();
+        this.priorityArrivals = generator.priorityArrivals;
+        this.nextArrivalTime = generator.nextArrivalTime;
+        this.nextArrivalCount = generator.nextArrivalCount;
+        this.mailUnscheduled = generator.mailUnscheduled;
+    }
+
+    @Override
+    public IMailSource fork(IMailPool mailPool, Clock clock, EventLog eventLog) {
+        return new MailGenerator(this, mailPool, clock, eventLog);
+    }
+
+    /**
+     * This method generates a new mail item that needs to be delivered into allMail
+     * @return the handle of the new mail item
      */
-    private static MailItem generateMail(){
-    	MailItem newMailItem;
-        int dest_floor = generateDestinationFloor();
-        int priority_level = generatePriorityLevel();
-        int arrival_time = generateArrivalTime();
-        int weight = generateWeight();
+    private int generateMail(){
+        int dest_floor = generateDestinationFloor(random);
+        int priority_level = generatePriorityLevel(random);
+        int arrival_time = generateArrivalTime(random);
+        int weight = generateWeight(random);
         // Check if arrival time has a priority mail
         if(	(random.nextInt(6) > 0) ||  // Skew towards non priority mail
-        	(allMail.containsKey(arrival_time) &&
-        	allMail.get(arrival_time).stream().anyMatch(e -> PriorityMailItem.class.isInstance(e))))
+        	priorityArrivals.get(arrival_time))
         {
-        	newMailItem = new MailItem(dest_floor,arrival_time,weight);      	
-        } else {
-        	newMailItem = new PriorityMailItem(dest_floor,arrival_time,weight,priority_level);
+        	return allMail.add(dest_floor, arrival_time, weight, MailStore.NO_PRIORITY);
         }
-        return newMailItem;
+        priorityArrivals.set(arrival_time);
+        return allMail.add(dest_floor, arrival_time, weight, priority_level);
     }
 
     /**
+     * This method generates a mail item whose arrival time is already known, for streaming
+     * @param arrival_time the time the mail item arrives
+     * @param priorityArrived true if a priority mail item already arrives at that time
+     * @return a new mail item that needs to be delivered
+     */
+    private MailItem generateMail(int arrival_time, boolean priorityArrived){
+        int dest_floor = generateDestinationFloor(random);
+        int priority_level = generatePriorityLevel(random);
+        int weight = generateWeight(random);
+        // Skew towards non priority mail, with at most one priority mail item per arrival time
+        if (random.nextInt(6) > 0 || priorityArrived) {
+            return new MailItem(mailCreated, dest_floor, arrival_time, weight);
+        }
+        return new PriorityMailItem(mailCreated, dest_floor, arrival_time, weight, priority_level);
+    }
+
+    /**
+     * @param generator the random stream to draw from
      * @return a destination floor between the ranges of GROUND_FLOOR to FLOOR
      */
-    private static int generateDestinationFloor(){
-        return Building.LOWEST_FLOOR + random.nextInt(Building.FLOORS);
+    private int generateDestinationFloor(RandomGenerator generator){
+        return Building.LOWEST_FLOOR + generator.nextInt(building.FLOORS);
     }
 
     /**
+     * @param generator the random stream to draw from
      * @return a random priority level selected from 1 - 100
      */
-    private static int generatePriorityLevel(){
-        return 10*(1 + random.nextInt(10));
+    private int generatePriorityLevel(RandomGenerator generator){
+        return 10*(1 + generator.nextInt(10));
     }
 
     /**
+     * @param generator the random stream to draw from
      * @return a random weight
      */
-    private static int generateWeight(){
+    private int generateWeight(RandomGenerator generator){
     	final double mean = 200.0; // grams for normal item
     	final double stddev = 1000.0; // grams
-    	double base = random.nextGaussian();
+    	double base = generator.nextGaussian();
     	if (base < 0) base = -base;
     	int weight = (int) (mean + base * stddev);
         return weight > MAIL_MAX_WEIGHT ? MAIL_MAX_WEIGHT : weight;
     }
     
     /**
+     * @param generator the random stream to draw from
      * @return a random arrival time before the last delivery time
      */
-    private static int generateArrivalTime(){
-        return 1 + random.nextInt(Clock.LAST_DELIVERY_TIME);
+    private int generateArrivalTime(RandomGenerator generator){
+        return 1 + generator.nextInt(clock.LAST_DELIVERY_TIME);
     }
 
     /**
-     * This class initializes all mail and sets their corresponding values
+     * This class initializes all mail and sets their corresponding values.
+     * When streaming, it only finds the first arrival time; the mail items are generated as they arrive.
      */
-    public static void generateAllMail(){
+    public void generateAllMail(){
+        if (generation == Generation.STREAM) {
+            mailUnscheduled = MAIL_TO_CREATE;
+            scheduleNextArrival(0);
+            return;
+        }
+        if (generation == Generation.SPLIT) {
+            generateAllMailInParallel();
+            return;
+        }
+        allMail = new MailStore(MAIL_TO_CREATE);
         while(!complete){
-            MailItem newMail = generateMail();
-            int timeToDeliver = newMail.getArrivalTime();
-            /** Check if key exists for this time **/
-            if(allMail.containsKey(timeToDeliver)){
-                /** Add to existing array */
-                allMail.get(timeToDeliver).add(newMail);
-            }
-            else{
-                /** If the key doesn't exist then set a new key along with the array of MailItems to add during
-                 * that time step.
-                 */
-                ArrayList<MailItem> newMailList = new ArrayList<MailItem>();
-                newMailList.add(newMail);
-                allMail.put(timeToDeliver,newMailList);
-            }
+            generateMail();
             /** Mark the mail as created */
             mailCreated++;
 
@@ -150,31 +260,404 @@ public class MailGenerator{
                 complete = true;
             }
         }
+        indexByArrivalTime();
+    }
+
+    /**
+     * This method sorts the handles of allMail by arrival time with a counting sort,
+     * keeping id order within an arrival time
+     */
+    private void indexByArrivalTime() {
+        int count = allMail.size();
+        arrivalStart = new int[clock.LAST_DELIVERY_TIME + 2];
+        for (int handle = 0; handle < count; handle++) {
+            arrivalStart[allMail.getArrivalTime(handle) + 1]++;
+        }
+        for (int time = 0; time <= clock.LAST_DELIVERY_TIME; time++) {
+            if (arrivalStart[time + 1] > 0) {
+                pendingArrivals.set(time);
+            }
+            arrivalStart[time + 1] += arrivalStart[time];
+        }
+        int[] next = Arrays.copyOf(arrivalStart, arrivalStart.length);
+        handlesByArrival = new int[count];
+        for (int handle = 0; handle < count; handle++) {
+            handlesByArrival[next[allMail.getArrivalTime(handle)]++] = handle;
+        }
+    }
+
+    /**
+     * This method makes the mail items arriving now out of allMail
+     * @return the mail items arriving now, in id order, or null if there are none
+     */
+    private ArrayList<MailItem> takeArrivals() {
+        int time = clock.Time();
+        if (!pendingArrivals.get(time)) {
+            return null;
+        }
+        pendingArrivals.clear(time);
+        ArrayList<MailItem> arrivals = new ArrayList<>(arrivalStart[time + 1] - arrivalStart[time]);
+        for (int i = arrivalStart[time]; i < arrivalStart[time + 1]; i++) {
+            arrivals.add(allMail.get(handlesByArrival[i]));
+        }
+        return arrivals;
     }
     
     /**
      * While there are steps left, create a new mail item to deliver
      * @return Priority
      */
-    public static PriorityMailItem step(){
+    public PriorityMailItem step(){
     	PriorityMailItem priority = null;
     	// Check if there are any mail to create
-        if(allMail.containsKey(Clock.Time())){
-            for(MailItem mailItem : allMail.get(Clock.Time())){
+        ArrayList<MailItem> arrivals = generation == Generation.STREAM
+                ? generateArrivals() : takeArrivals();
+        if(arrivals != null){
+            int accepted = 0;
+            for(MailItem mailItem : arrivals){
         		if (mailItem instanceof PriorityMailItem) priority = ((PriorityMailItem) mailItem);
-	            System.out.printf("T: %3d > new addToPool [%s]%n", Clock.Time(), mailItem.toString());
-	            mailPool.addToPool(mailItem);
+	            eventLog.arrival(clock.Time(), mailItem);
+                // Reject an item as it arrives, so its rejection is logged right after its arrival
+                if (!mailPool.rejectIfTooHeavy(mailItem)) {
+                    arrivals.set(accepted++, mailItem);
+                }
             }
+            arrivals.subList(accepted, arrivals.size()).clear();
+            /** Add every accepted arrival of this time step in one pass */
+            mailPool.addAllToPool(arrivals);
         }
         return priority;
     }
 
     /**
-     * This method gets the number of mail items created
+     * This method gets the time of the next mail items to arrive
+     * @return the earliest arrival time from the current time on, or -1 if no more mail will arrive
+     */
+    public int getNextArrivalTime() {
+        if (generation == Generation.STREAM) {
+            return nextArrivalTime;
+        }
+        return pendingArrivals.nextSetBit(clock.Time());
+    }
+
+    /**
+     * This method gets the number of mail items created.
+     * When streaming, it counts the mail items still to arrive as well, so that the Simulation
+     * does not end before they are delivered.
      * @return the number of mail items created
      */
-    public static int getMailCreated() {
-        return mailCreated;
+    public int getMailCreated() {
+        return generation == Generation.STREAM ? MAIL_TO_CREATE : mailCreated;
+    }
+
+    /**
+     * This method writes the generation, the number of mail items, and either the seed and the
+     * arrival times still to come, or when streaming the position of the random stream
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeByte(generation.ordinal());
+        out.writeInt(MAIL_TO_CREATE);
+        out.writeInt(mailCreated);
+        if (generation == Generation.STREAM) {
+            random.writeState(out);
+            out.writeInt(nextArrivalTime);
+            out.writeInt(nextArrivalCount);
+            out.writeInt(mailUnscheduled);
+        } else {
+            out.writeLong(seed);
+            out.writeLong(startState);
+            Checkpoint.writeBitSet(out, pendingArrivals);
+        }
+    }
+
+    /**
+     * This method restores the state written by writeState. With ALL or SPLIT it generates
+     * all mail items again from the seed, then forgets those that have already arrived.
+     */
+    @Override
+    public void readState(DataInput in) throws IOException {
+        int written = in.readByte();
+        if (written != generation.ordinal()) {
+            throw new IOException("The checkpoint was written with Mail_Generation="
+                    + Generation.values()[written] + ", not " + generation);
+        }
+        MAIL_TO_CREATE = in.readInt();
+        int created = in.readInt();
+        if (generation == Generation.STREAM) {
+            random.readState(in);
+            nextArrivalTime = in.readInt();
+            nextArrivalCount = in.readInt();
+            mailUnscheduled = in.readInt();
+            mailCreated = created;
+            return;
+        }
+        long writtenSeed = in.readLong();
+        random.setState(in.readLong());
+        splitRandom = new SplittableRandom(writtenSeed);
+        BitSet pending = Checkpoint.readBitSet(in);
+        generateAllMail();
+        pendingArrivals = pending;
+    }
+
+    /**
+     * This method generates the mail items arriving now when streaming,
+     * then finds the next arrival time
+     * @return the mail items arriving now, or null if there are none
+     */
+    private ArrayList<MailItem> generateArrivals() {
+        if (clock.Time() != nextArrivalTime) {
+            return null;
+        }
+        ArrayList<MailItem> arrivals = new ArrayList<>(nextArrivalCount);
+        boolean priorityArrived = false;
+        for (int i = 0; i < nextArrivalCount; i++) {
+            MailItem mailItem = generateMail(nextArrivalTime, priorityArrived);
+            priorityArrived |= mailItem instanceof PriorityMailItem;
+            arrivals.add(mailItem);
+            mailCreated++;
+        }
+        scheduleNextArrival(nextArrivalTime);
+        return arrivals;
+    }
+
+    /**
+     * This method finds the next arrival time with mail items when streaming.<br/><br/>
+     * Every mail item arrives at a time between 1 and LAST_DELIVERY_TIME with the same chance.
+     * So of the n items that have not arrived by time t - 1, the number arriving at time t
+     * is binomial with n trials and a chance of 1 / (LAST_DELIVERY_TIME - t + 1).
+     * @param after the last arrival time already generated
+     */
+    private void scheduleNextArrival(int after) {
+        for (int time = after + 1; time <= clock.LAST_DELIVERY_TIME && mailUnscheduled > 0; time++) {
+            int count = binomial(mailUnscheduled, 1.0 / (clock.LAST_DELIVERY_TIME - time + 1));
+            if (count > 0) {
+                mailUnscheduled -= count;
+                nextArrivalTime = time;
+                nextArrivalCount = count;
+                return;
+            }
+        }
+        nextArrivalTime = -1;
+        nextArrivalCount = 0;
+    }
+
+    /**
+     * This method draws a binomial number by skipping from one success to the next
+     * with geometric jumps, which takes about n * p + 1 draws
+     * @param n the number of trials
+     * @param p the chance of success of each trial
+     * @return the number of successes
+     */
+    private int binomial(int n, double p) {
+        if (p >= 1) {
+            return n;
+        }
+        double logFailure = Math.log(1 - p);
+        int successes = 0;
+        long trial = 0;
+        while (true) {
+            trial += 1 + (long) (Math.log(1 - random.nextDouble()) / logFailure);
+            if (trial > n) {
+                return successes;
+            }
+            successes++;
+        }
+    }
+
+
+    /**
+     * This method generates all mail items in blocks of SPLIT_BLOCK ids on the generating threads.<br/><br/>
+     * Every block draws from its own stream, split from the seed in block order, so the mail items
+     * do not depend on the number of threads. As with ALL, at most one mail item per arrival time
+     * is a priority item: the one with the lowest id of those that drew one.
+     */
+    private void generateAllMailInParallel() {
+        int count = MAIL_TO_CREATE;
+        int blocks = (count + SPLIT_BLOCK - 1) / SPLIT_BLOCK;
+        SplittableRandom[] streams = new SplittableRandom[blocks];
+        for (int block = 0; block < blocks; block++) {
+            streams[block] = splitRandom.split();
+        }
+
+        allMail = new MailStore(count);
+        allMail.allocate(count);
+        boolean[] priorityDrawn = new boolean[count];
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            forEachBlock(pool, blocks, block -> {
+                SplittableRandom stream = streams[block];
+                for (int id = block * SPLIT_BLOCK, end = Math.min(count, id + SPLIT_BLOCK); id < end; id++) {
+                    int destination = generateDestinationFloor(stream);
+                    int priorityLevel = generatePriorityLevel(stream);
+                    int arrivalTime = generateArrivalTime(stream);
+                    int weight = generateWeight(stream);
+                    allMail.set(id, destination, arrivalTime, weight, priorityLevel);
+                    priorityDrawn[id] = stream.nextInt(6) == 0; // Skew towards non priority mail
+                }
+            });
+
+            // The priority mail item of an arrival time is the first to draw one
+            int[] priorityIds = new int[clock.LAST_DELIVERY_TIME + 1];
+            Arrays.fill(priorityIds, -1);
+            for (int id = count - 1; id >= 0; id--) {
+                if (priorityDrawn[id]) {
+                    priorityIds[allMail.getArrivalTime(id)] = id;
+                }
+            }
+
+            forEachBlock(pool, blocks, block -> {
+                for (int id = block * SPLIT_BLOCK, end = Math.min(count, id + SPLIT_BLOCK); id < end; id++) {
+                    if (priorityIds[allMail.getArrivalTime(id)] != id) {
+                        allMail.clearPriority(id);
+                    }
+                }
+            });
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        indexByArrivalTime();
+        mailCreated = count;
+        complete = true;
+    }
+
+    /**
+     * This method runs an action for every block, on the pool if there is one
+     * @param pool the threads to run the blocks on, or null to run them one after another
+     * @param blocks the number of blocks
+     * @param action the action for one block
+     */
+    private static void forEachBlock(ForkJoinPool pool, int blocks, IntConsumer action) {
+        if (pool == null) {
+            for (int block = 0; block < blocks; block++) {
+                action.accept(block);
+            }
+        } else {
+            pool.invoke(new BlockTask(action, 0, blocks));
+        }
+    }
+
+    /**
+     * A BlockTask runs an action for a range of blocks, splitting the range in halves down to one block
+     */
+    private static class BlockTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer action;
+        private final int from;
+        private final int to;
+
+        BlockTask(IntConsumer action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.accept(from);
+            } else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BlockTask(action, from, middle), new BlockTask(action, middle, to));
+            }
+        }
+    }
+
+    /**
+     * An UnsynchronizedRandom draws the same numbers as java.util.Random from the same seed,
+     * without updating the seed atomically on every draw. It must only be used by one thread.
+     * It keeps its own spare Gaussian, so its whole position can be written to a checkpoint.
+     */
+    private static class UnsynchronizedRandom extends Random {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final long MULTIPLIER = 0x5DEECE66DL;
+        private static final long ADDEND = 0xBL;
+        private static final long MASK = (1L << 48) - 1;
+
+        /** Set by setSeed, which the constructor of Random calls */
+        private long state;
+        /** The second Gaussian of the last pair drawn, if it has not been drawn yet */
+        private boolean haveNextNextGaussian;
+        private double nextNextGaussian;
+
+        UnsynchronizedRandom(long seed) {
+            super(seed);
+        }
+
+        /**
+         * A copy of a random stream, drawing the same numbers from then on
+         */
+        UnsynchronizedRandom(UnsynchronizedRandom random) {
+            super(0);
+            this.state = random.state;
+            this.haveNextNextGaussian = random.haveNextNextGaussian;
+            this.nextNextGaussian = random.nextNextGaussian;
+        }
+
+        @Override
+        public void setSeed(long seed) {
+            super.setSeed(seed);
+            state = (seed ^ MULTIPLIER) & MASK;
+            haveNextNextGaussian = false;
+        }
+
+        long getState() {
+            return state;
+        }
+
+        /**
+         * Moves the stream to a state from getState, at the start of a pair of Gaussians
+         */
+        void setState(long state) {
+            this.state = state;
+            haveNextNextGaussian = false;
+        }
+
+        void writeState(DataOutput out) throws IOException {
+            out.writeLong(state);
+            out.writeBoolean(haveNextNextGaussian);
+            out.writeDouble(nextNextGaussian);
+        }
+
+        void readState(DataInput in) throws IOException {
+            state = in.readLong();
+            haveNextNextGaussian = in.readBoolean();
+            nextNextGaussian = in.readDouble();
+        }
+
+        /**
+         * The polar method of java.util.Random, drawing the same Gaussians
+         */
+        @Override
+        public double nextGaussian() {
+            if (haveNextNextGaussian) {
+                haveNextNextGaussian = false;
+                return nextNextGaussian;
+            }
+            double v1, v2, s;
+            do {
+                v1 = 2 * nextDouble() - 1;
+                v2 = 2 * nextDouble() - 1;
+                s = v1 * v1 + v2 * v2;
+            } while (s >= 1 || s == 0);
+            double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+            nextNextGaussian = v2 * multiplier;
+            haveNextNextGaussian = true;
+            return v1 * multiplier;
+        }
+
+        @Override
+        protected int next(int bits) {
+            state = (state * MULTIPLIER + ADDEND) & MASK;
+            return (int) (state >>> (48 - bits));
+        }
     }
 
 }
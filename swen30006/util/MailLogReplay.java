@@ -0,0 +1,650 @@
+package util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import automail.Building;
+import automail.Clock;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import strategies.IMailPool;
+
+/**
+ * A MailLogReplay brings in the mail items of a log of real mail room arrivals,
+ * instead of random ones, as they arrive.<br/><br/>
+ *
+ * The log has one mail item per line, in order of arrival time, as CSV or as JSON lines:<br/>
+ * - CSV: arrival_time,destination_floor,weight[,priority], with an optional header line naming
+ * the columns in any order<br/>
+ * - JSONL (a file ending in .jsonl or .json): {"arrival_time": 12, "destination_floor": 3, "weight": 500, "priority": 20}<br/>
+ * The priority is optional; a missing, empty, null or 0 priority makes an ordinary mail item.<br/><br/>
+ *
+ * The log is read through a memory-mapped window of WINDOW bytes that slides along the file,
+ * and numbers are parsed straight from the mapped bytes, so only the row about to arrive is
+ * held in memory. A row that cannot be parsed, is out of range or arrives before the row
+ * before it is reported and skipped; the run goes on. Mail items get ids 0, 1, 2, ...
+ * in the order of the rows kept. A checkpoint holds the position in the log and the row about to arrive.
+ * A fork reads on through the window of the log it was forked from, and maps windows of its own after it.
+ */
+public class MailLogReplay implements IMailSource {
+
+    private static Logger log = Logger.getLogger(MailLogReplay.class.getName());
+
+    /** The number of bytes of the log mapped at once. A longer line is skipped. */
+    static final int WINDOW = 1 << 26;
+    /** The number of malformed rows reported one by one */
+    private static final int REPORTED_ROWS = 20;
+
+    private static final int ARRIVAL = 0;
+    private static final int DESTINATION = 1;
+    private static final int WEIGHT = 2;
+    private static final int PRIORITY = 3;
+    /** The names a field may have in a CSV header or a JSON line, by field */
+    private static final String[][] FIELD_NAMES = {
+            {"arrival_time", "arrival", "time"},
+            {"destination_floor", "destination", "floor"},
+            {"weight"},
+            {"priority", "priority_level"}
+    };
+    private static final byte[][][] FIELD_NAME_BYTES = new byte[FIELD_NAMES.length][][];
+    static {
+        for (int field = 0; field < FIELD_NAMES.length; field++) {
+            FIELD_NAME_BYTES[field] = new byte[FIELD_NAMES[field].length][];
+            for (int name = 0; name < FIELD_NAMES[field].length; name++) {
+                FIELD_NAME_BYTES[field][name] = FIELD_NAMES[field][name].getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+    }
+
+    private final String file;
+    private final boolean json;
+    private final IMailPool mailPool;
+    private final Building building;
+    private final Clock clock;
+    private final EventLog eventLog;
+
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer window;
+    /** The position in the file of the first byte of the window */
+    private long windowStart;
+    private int windowLength;
+    /** The position in the window of the next line */
+    private int position;
+    private int lineStart;
+    private int lineEnd;
+    private long lineNumber;
+
+    /** CSV: the column of each field, or -1 if there is none */
+    private final int[] columns = {0, 1, 2, 3};
+
+    /** The fields of the row being parsed, and of the next row to arrive */
+    private final int[] row = new int[FIELD_NAMES.length];
+    private final boolean[] present = new boolean[FIELD_NAMES.length];
+    private String malformed;
+    private boolean hasNext;
+    private int nextArrivalTime = -1;
+    private int nextDestination;
+    private int nextWeight;
+    private int nextPriority;
+
+    private int mailCreated;
+    private long malformedRows;
+    /** false for a fork, which skips the malformed rows without reporting them again */
+    private final boolean reportMalformed;
+
+    /**
+     * Opens a log of mail arrivals
+     * @param file the path of the log, CSV or JSON lines
+     * @param mailPool where mail items go on arrival
+     * @param building the building the mail is delivered in
+     * @param clock the clock of the Simulation
+     * @param eventLog records the arrival of mail items
+     * @throws IOException if the log cannot be read
+     */
+    public MailLogReplay(String file, IMailPool mailPool, Building building, Clock clock, EventLog eventLog)
+            throws IOException {
+        this.file = file;
+        String name = file.toLowerCase(Locale.ROOT);
+        this.json = name.endsWith(".jsonl") || name.endsWith(".json");
+        this.mailPool = mailPool;
+        this.building = building;
+        this.clock = clock;
+        this.eventLog = eventLog;
+        this.channel = FileChannel.open(Paths.get(file));
+        this.fileSize = channel.size();
+        this.reportMalformed = true;
+        map(0);
+    }
+
+    /**
+     * A fork of a log replay, at the same row of the log. It shares the window mapped,
+     * and opens the log itself if it needs the next window.
+     */
+    private MailLogReplay(MailLogReplay replay, IMailPool mailPool, Clock clock, EventLog eventLog) {
+        this.file = replay.file;
+        this.json = replay.json;
+        this.mailPool = mailPool;
+        this.building = replay.building;
+        this.clock = clock;
+        this.eventLog = eventLog;
+        this.fileSize = replay.fileSize;
+        this.window = replay.window == null ? null : replay.window.duplicate();
+        this.windowStart = replay.windowStart;
+        this.windowLength = replay.windowLength;
+        this.position = replay.position;
+        this.lineStart = replay.lineStart;
+        this.lineEnd = replay.lineEnd;
+        this.lineNumber = replay.lineNumber;
+        System.arraycopy(replay.columns, 0, columns, 0, columns.length);
+        this.hasNext = replay.hasNext;
+        this.nextArrivalTime = replay.nextArrivalTime;
+        this.nextDestination = replay.nextDestination;
+        this.nextWeight = replay.nextWeight;
+        this.nextPriority = replay.nextPriority;
+        this.mailCreated = replay.mailCreated;
+        this.malformedRows = replay.malformedRows;
+        this.reportMalformed = false;
+    }
+
+    @Override
+    public IMailSource fork(IMailPool mailPool, Clock clock, EventLog eventLog) {
+        return new MailLogReplay(this, mailPool, clock, eventLog);
+    }
+
+    /**
+     * This method reads the CSV header, if there is one, and the first row of the log
+     */
+    @Override
+    public void generateAllMail() {
+        try {
+            if (!json) {
+                readHeader();
+            }
+            readNextRow();
+        } catch (IOException e) {
+            log.warning("Could not read " + file + ": " + e);
+            close();
+        }
+    }
+
+    /**
+     * This method adds the mail items of the rows arriving now to the mail pool,
+     * then reads on to the first row arriving later
+     * @return a priority mail item that arrived, or null if none did
+     */
+    @Override
+    public PriorityMailItem step() {
+        if (!hasNext || nextArrivalTime != clock.Time()) {
+            return null;
+        }
+        PriorityMailItem priority = null;
+        ArrayList<MailItem> arrivals = new ArrayList<>();
+        try {
+            while (hasNext && nextArrivalTime == clock.Time()) {
+                MailItem mailItem = nextPriority > 0
+                        ? new PriorityMailItem(mailCreated, nextDestination, nextArrivalTime, nextWeight, nextPriority)
+                        : new MailItem(mailCreated, nextDestination, nextArrivalTime, nextWeight);
+                mailCreated++;
+                if (mailItem instanceof PriorityMailItem) priority = ((PriorityMailItem) mailItem);
+                eventLog.arrival(clock.Time(), mailItem);
+                // Reject an item as it arrives, so its rejection is logged right after its arrival
+                if (!mailPool.rejectIfTooHeavy(mailItem)) {
+                    arrivals.add(mailItem);
+                }
+                readNextRow();
+            }
+        } catch (IOException e) {
+            log.warning("Could not read " + file + " after line " + lineNumber + ": " + e);
+            close();
+        }
+        /** Add every accepted arrival of this time step in one pass */
+        mailPool.addAllToPool(arrivals);
+        return priority;
+    }
+
+    @Override
+    public int getNextArrivalTime() {
+        return hasNext ? nextArrivalTime : -1;
+    }
+
+    /**
+     * This method gets the number of mail items created. While rows are left to arrive
+     * it counts one more, as the number of rows left is not known until they are read.
+     * @return the number of mail items read so far, plus one if there are more to come
+     */
+    @Override
+    public int getMailCreated() {
+        return hasNext ? mailCreated + 1 : mailCreated;
+    }
+
+    /**
+     * This method writes the size of the log, the position after the row about to arrive,
+     * the CSV columns, that row and the counts so far
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeLong(fileSize);
+        out.writeLong(window == null ? fileSize : windowStart + position);
+        out.writeLong(lineNumber);
+        for (int column : columns) {
+            out.writeInt(column);
+        }
+        out.writeBoolean(hasNext);
+        out.writeInt(nextArrivalTime);
+        out.writeInt(nextDestination);
+        out.writeInt(nextWeight);
+        out.writeInt(nextPriority);
+        out.writeInt(mailCreated);
+        out.writeLong(malformedRows);
+    }
+
+    /**
+     * This method restores the state written by writeState and maps the log from the position written
+     * @throws IOException if the log has changed size since the checkpoint
+     */
+    @Override
+    public void readState(DataInput in) throws IOException {
+        long writtenSize = in.readLong();
+        if (writtenSize != fileSize) {
+            throw new IOException("The checkpoint was written with a mail log of " + writtenSize
+                    + " bytes, but " + file + " has " + fileSize);
+        }
+        long offset = in.readLong();
+        lineNumber = in.readLong();
+        for (int field = 0; field < columns.length; field++) {
+            columns[field] = in.readInt();
+        }
+        hasNext = in.readBoolean();
+        nextArrivalTime = in.readInt();
+        nextDestination = in.readInt();
+        nextWeight = in.readInt();
+        nextPriority = in.readInt();
+        mailCreated = in.readInt();
+        malformedRows = in.readLong();
+        if (hasNext) {
+            map(offset);
+        } else {
+            close();
+        }
+    }
+
+    /**
+     * This method gets the number of rows skipped so far because they were malformed
+     * @return the number of malformed rows
+     */
+    public long getMalformedRows() {
+        return malformedRows;
+    }
+
+    /**
+     * This method reads rows until one can be kept as the next to arrive,
+     * or the log ends
+     */
+    private void readNextRow() throws IOException {
+        while (nextLine()) {
+            if (lineStart == lineEnd) {
+                continue; // blank line
+            }
+            malformed = null;
+            present[ARRIVAL] = present[DESTINATION] = present[WEIGHT] = present[PRIORITY] = false;
+            if (json) {
+                parseJsonRow();
+            } else {
+                parseCsvRow();
+            }
+            if (malformed == null) {
+                checkRow();
+            }
+            if (malformed != null) {
+                reportMalformed(lineNumber, malformed);
+                continue;
+            }
+            hasNext = true;
+            nextArrivalTime = row[ARRIVAL];
+            nextDestination = row[DESTINATION];
+            nextWeight = row[WEIGHT];
+            nextPriority = present[PRIORITY] ? row[PRIORITY] : 0;
+            return;
+        }
+        hasNext = false;
+        if (malformedRows > 0 && reportMalformed) {
+            log.warning(malformedRows + " malformed rows of " + file + " were skipped");
+        }
+        close();
+    }
+
+    /**
+     * This method checks that the fields of a parsed row are all there and in range
+     */
+    private void checkRow() {
+        for (int field = ARRIVAL; field <= WEIGHT; field++) {
+            if (!present[field]) {
+                malformed = "no " + FIELD_NAMES[field][0];
+                return;
+            }
+        }
+        if (row[ARRIVAL] < 0) {
+            malformed = "negative arrival time " + row[ARRIVAL];
+        } else if (hasNext && row[ARRIVAL] < nextArrivalTime) {
+            malformed = "arrival time " + row[ARRIVAL] + " is before " + nextArrivalTime + " of the row before";
+        } else if (row[DESTINATION] < Building.LOWEST_FLOOR || row[DESTINATION] > building.FLOORS) {
+            malformed = "destination floor " + row[DESTINATION] + " is not in the building";
+        } else if (row[WEIGHT] < 0) {
+            malformed = "negative weight " + row[WEIGHT];
+        } else if (present[PRIORITY] && (row[PRIORITY] < 0 || row[PRIORITY] > 100)) {
+            malformed = "priority " + row[PRIORITY] + " is not between 0 and 100";
+        }
+    }
+
+    private void reportMalformed(long line, String reason) {
+        malformedRows++;
+        if (!reportMalformed) {
+            return;
+        }
+        if (malformedRows <= REPORTED_ROWS) {
+            log.warning(file + ":" + line + ": " + reason + ", row skipped");
+        } else if (malformedRows == REPORTED_ROWS + 1) {
+            log.warning("More malformed rows in " + file + " are skipped without a report");
+        }
+    }
+
+    /**
+     * This method maps the window of the log starting at a position of the file
+     */
+    private void map(long start) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(Paths.get(file));
+        }
+        windowStart = start;
+        windowLength = (int) Math.min(WINDOW, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, windowLength);
+        position = 0;
+    }
+
+    /**
+     * This method finds the next line of the log, sliding the window along when the line
+     * runs past its end. The line is from lineStart to lineEnd of the window, without its line break.
+     * @return false at the end of the log
+     */
+    private boolean nextLine() throws IOException {
+        if (window == null) {
+            return false;
+        }
+        boolean tooLong = false;
+        while (true) {
+            if (windowStart + position >= fileSize) {
+                return false;
+            }
+            int end = position;
+            while (end < windowLength && window.get(end) != '\n') {
+                end++;
+            }
+            boolean lastLine = windowStart + windowLength >= fileSize;
+            if (end < windowLength || lastLine) {
+                lineNumber++;
+                lineStart = position;
+                lineEnd = end;
+                position = Math.min(end + 1, windowLength);
+                if (tooLong) {
+                    // The rest of a line longer than the window
+                    reportMalformed(lineNumber, "longer than " + WINDOW + " bytes");
+                    tooLong = false;
+                    continue;
+                }
+                if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                return true;
+            }
+            if (position == 0) {
+                // The line fills the whole window, skip it
+                tooLong = true;
+                map(windowStart + windowLength);
+            } else {
+                map(windowStart + position);
+            }
+        }
+    }
+
+    /**
+     * This method reads the CSV header, if the first line starts with a letter,
+     * and finds the column of each field from it
+     */
+    private void readHeader() throws IOException {
+        if (!nextLine()) {
+            return;
+        }
+        int first = skipSpaces(lineStart, lineEnd);
+        if (first == lineEnd || !Character.isLetter(window.get(first))) {
+            // No header: the first line is a row, so read it again
+            position = lineStart;
+            lineNumber--;
+            return;
+        }
+        byte[] bytes = new byte[lineEnd - lineStart];
+        window.get(lineStart, bytes);
+        String[] names = new String(bytes, StandardCharsets.UTF_8).split(",");
+        for (int field = 0; field < FIELD_NAMES.length; field++) {
+            columns[field] = -1;
+            for (int column = 0; column < names.length; column++) {
+                String name = names[column].trim().replace("\"", "").toLowerCase(Locale.ROOT);
+                for (String fieldName : FIELD_NAMES[field]) {
+                    if (name.equals(fieldName)) {
+                        columns[field] = column;
+                    }
+                }
+            }
+            if (columns[field] < 0 && field != PRIORITY) {
+                throw new IOException("The header of " + file + " has no " + FIELD_NAMES[field][0] + " column");
+            }
+        }
+    }
+
+    /**
+     * This method parses the fields of a CSV row into row and present
+     */
+    private void parseCsvRow() {
+        int column = 0;
+        int start = lineStart;
+        while (start <= lineEnd && malformed == null) {
+            int end = start;
+            while (end < lineEnd && window.get(end) != ',') {
+                end++;
+            }
+            for (int field = 0; field < FIELD_NAMES.length; field++) {
+                if (columns[field] == column) {
+                    parseField(field, start, end);
+                }
+            }
+            column++;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * This method parses the fields of a JSON line into row and present.
+     * Fields of other names are skipped.
+     */
+    private void parseJsonRow() {
+        int i = skipSpaces(lineStart, lineEnd);
+        if (i == lineEnd || window.get(i) != '{') {
+            malformed = "not a JSON object";
+            return;
+        }
+        i++;
+        while (malformed == null) {
+            i = skipSpaces(i, lineEnd);
+            if (i < lineEnd && window.get(i) == '}') {
+                return;
+            }
+            if (i == lineEnd || window.get(i) != '"') {
+                malformed = "expected a field name at column " + (i - lineStart + 1);
+                return;
+            }
+            int nameStart = i + 1;
+            int nameEnd = skipString(i);
+            if (nameEnd < 0) {
+                malformed = "unterminated field name";
+                return;
+            }
+            i = skipSpaces(nameEnd + 1, lineEnd);
+            if (i == lineEnd || window.get(i) != ':') {
+                malformed = "expected : at column " + (i - lineStart + 1);
+                return;
+            }
+            i = skipSpaces(i + 1, lineEnd);
+            int valueStart = i;
+            int valueEnd;
+            if (i < lineEnd && window.get(i) == '"') {
+                valueEnd = skipString(i);
+                if (valueEnd < 0) {
+                    malformed = "unterminated string";
+                    return;
+                }
+                valueEnd++;
+            } else {
+                valueEnd = i;
+                while (valueEnd < lineEnd && window.get(valueEnd) != ',' && window.get(valueEnd) != '}') {
+                    valueEnd++;
+                }
+            }
+            int field = fieldOf(nameStart, nameEnd);
+            if (field >= 0) {
+                parseField(field, valueStart, valueEnd);
+            }
+            i = skipSpaces(valueEnd, lineEnd);
+            if (i < lineEnd && window.get(i) == ',') {
+                i++;
+            } else if (i == lineEnd || window.get(i) != '}') {
+                malformed = "expected , or } at column " + (i - lineStart + 1);
+            }
+        }
+    }
+
+    /**
+     * @return the field named by the bytes from start to end of the window, or -1 if none is
+     */
+    private int fieldOf(int start, int end) {
+        for (int field = 0; field < FIELD_NAME_BYTES.length; field++) {
+            for (byte[] name : FIELD_NAME_BYTES[field]) {
+                if (matches(name, start, end)) {
+                    return field;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the bytes from start to end of the window are those of a name
+     */
+    private boolean matches(byte[] name, int start, int end) {
+        if (name.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (window.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a whole number from the bytes from start to end of the window, which may be
+     * quoted and padded with spaces. An empty value, null or "" leaves the field absent.
+     */
+    private void parseField(int field, int start, int end) {
+        start = skipSpaces(start, end);
+        while (end > start && isSpace(window.get(end - 1))) {
+            end--;
+        }
+        if (end - start >= 2 && window.get(start) == '"' && window.get(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        if (start == end || (end - start == 4 && window.get(start) == 'n' && window.get(start + 1) == 'u'
+                && window.get(start + 2) == 'l' && window.get(start + 3) == 'l')) {
+            return;
+        }
+        boolean negative = window.get(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            malformed = "no digits in " + FIELD_NAMES[field][0];
+            return;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = window.get(i);
+            if (b < '0' || b > '9' || value > Integer.MAX_VALUE) {
+                malformed = "bad " + FIELD_NAMES[field][0] + " " + text(start, end);
+                return;
+            }
+            value = 10 * value + (b - '0');
+        }
+        if (value > Integer.MAX_VALUE) {
+            malformed = "bad " + FIELD_NAMES[field][0] + " " + text(start, end);
+            return;
+        }
+        row[field] = (int) (negative ? -value : value);
+        present[field] = true;
+    }
+
+    /**
+     * @param quote the position of the opening quote of a JSON string
+     * @return the position of its closing quote, or -1 if the line ends first
+     */
+    private int skipString(int quote) {
+        for (int i = quote + 1; i < lineEnd; i++) {
+            byte b = window.get(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipSpaces(int i, int end) {
+        while (i < end && isSpace(window.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * @return the bytes from start to end of the window as text, for reports
+     */
+    private String text(int start, int end) {
+        byte[] bytes = new byte[Math.min(end - start, 40)];
+        window.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void close() {
+        hasNext = false;
+        window = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more is read
+            }
+            channel = null;
+        }
+    }
+}
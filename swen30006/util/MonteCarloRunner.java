@@ -0,0 +1,196 @@
+package util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import automail.SimulationEngine;
+import automail.SimulationResult;
+
+/**
+ * A MonteCarloRunner runs the Simulation of one configuration with many seeds in parallel,
+ * and reports the spread of the final score and the final delivery time across seeds.<br/><br/>
+ *
+ * The result of each seed is printed as it comes in, in seed order. At the end it prints
+ * the mean, standard deviation, 5th/50th/95th percentiles and 95% confidence interval
+ * of the mean of both values.<br/><br/>
+ *
+ * With -ci-width W, the run stops early once the 95% confidence intervals of both means
+ * are no wider than W times the mean, e.g. 0.02 for 2%. The decision is taken in seed order,
+ * so the seeds used do not depend on the number of threads.<br/><br/>
+ *
+ * Usage: java -cp &lt;classpath&gt; util.MonteCarloRunner [-seeds N] [-first S] [-threads T]
+ * [-ci-width W] [properties file]
+ */
+public class MonteCarloRunner {
+
+    /** The fewest seeds run before stopping early */
+    private static final int MIN_SEEDS = 10;
+
+    /** Two-sided 95% quantiles of Student's t distribution for 1 to 30 degrees of freedom */
+    private static final double[] T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042 };
+    /** The quantile of the normal distribution used beyond 30 degrees of freedom */
+    private static final double Z_95 = 1.960;
+
+    private MonteCarloRunner(){}
+
+    public static void main(String[] args) throws InterruptedException {
+        int seeds = 100;
+        Integer firstSeed = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double ciWidth = 0;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-seeds") && i + 1 < args.length) {
+                seeds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-first") && i + 1 < args.length) {
+                firstSeed = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-ci-width") && i + 1 < args.length) {
+                ciWidth = Double.parseDouble(args[++i]);
+            } else {
+                file = args[i];
+            }
+        }
+        Configuration configuration = (file == null ? Configuration.getDefault() : Configuration.load(file))
+                .with("Log_Level", "SUMMARY")
+                .with("Trace_File", "") // the runs would all write the same trace
+                .with("Checkpoint_File", "").with("Resume_From", "").with("Metrics_JMX", "");
+        if (firstSeed == null) {
+            String seedProp = configuration.getProperty("Seed");
+            firstSeed = seedProp == null ? 1 : Integer.parseInt(seedProp);
+        }
+
+        Summary scores = new Summary();
+        Summary times = new Summary();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        // Keep a few seeds running ahead of the one being reported, so no worker is idle
+        Deque<Future<SimulationResult>> running = new ArrayDeque<>();
+        int nextSeed = firstSeed;
+        int lastSeed = firstSeed + seeds - 1;
+        System.out.printf("%8s %8s %16s%n", "Seed", "Time", "Score");
+        try {
+            while (running.size() < 2 * threads && nextSeed <= lastSeed) {
+                running.add(submit(workers, configuration, nextSeed++));
+            }
+            int seed = firstSeed;
+            while (!running.isEmpty()) {
+                SimulationResult result = running.poll().get();
+                System.out.printf("%8d %8d %16.2f%n", seed++, result.getFinalTime(), result.getScore());
+                scores.add(result.getScore());
+                times.add(result.getFinalTime());
+
+                if (ciWidth > 0 && scores.count() >= MIN_SEEDS
+                        && scores.isNarrowerThan(ciWidth) && times.isNarrowerThan(ciWidth)) {
+                    System.out.printf("Stopped after %d seeds: 95%% confidence intervals within %.2f%% of the mean%n",
+                            scores.count(), 100 * ciWidth);
+                    break;
+                }
+                if (nextSeed <= lastSeed) {
+                    running.add(submit(workers, configuration, nextSeed++));
+                }
+            }
+        } catch (ExecutionException e) {
+            System.out.println("Simulation unable to complete: " + e.getCause());
+        } finally {
+            running.forEach(future -> future.cancel(true));
+            workers.shutdownNow();
+        }
+
+        System.out.printf("%n%-6s %6s %16s %16s %16s %16s %16s %33s%n",
+                "", "Seeds", "Mean", "Stddev", "P5", "P50", "P95", "95% CI of mean");
+        scores.print("Score");
+        times.print("Time");
+    }
+
+    private static Future<SimulationResult> submit(ExecutorService workers, Configuration configuration, int seed) {
+        Configuration seeded = configuration.with("Seed", String.valueOf(seed));
+        return workers.submit(() -> new SimulationEngine(seeded).run());
+    }
+
+    /**
+     * A Summary collects the values of one result across seeds
+     */
+    private static class Summary {
+
+        private final List<Double> values = new ArrayList<>();
+        private double sum = 0;
+        private double sumOfSquares = 0;
+
+        void add(double value) {
+            values.add(value);
+            sum += value;
+            sumOfSquares += value * value;
+        }
+
+        int count() {
+            return values.size();
+        }
+
+        double mean() {
+            return sum / count();
+        }
+
+        double stddev() {
+            int n = count();
+            if (n < 2) {
+                return 0;
+            }
+            return Math.sqrt(Math.max(0, (sumOfSquares - sum * sum / n) / (n - 1)));
+        }
+
+        /**
+         * @return half the width of the 95% confidence interval of the mean
+         */
+        double halfWidth() {
+            int n = count();
+            if (n < 2) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double t = n - 1 <= T_95.length ? T_95[n - 2] : Z_95;
+            return t * stddev() / Math.sqrt(n);
+        }
+
+        /**
+         * @param relativeWidth a width as a fraction of the mean
+         * @return true if the 95% confidence interval of the mean is no wider than that
+         */
+        boolean isNarrowerThan(double relativeWidth) {
+            return 2 * halfWidth() <= relativeWidth * Math.abs(mean());
+        }
+
+        /**
+         * @param sorted the values in ascending order
+         * @param p a percentile from 0 to 100
+         * @return the value at that percentile, by the nearest rank
+         */
+        double percentile(double[] sorted, double p) {
+            int rank = (int) Math.ceil(p / 100 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        void print(String name) {
+            if (values.isEmpty()) {
+                return;
+            }
+            double[] sorted = values.stream().mapToDouble(Double::doubleValue).toArray();
+            Arrays.sort(sorted);
+            double halfWidth = halfWidth();
+            System.out.printf("%-6s %6d %16.2f %16.2f %16.2f %16.2f %16.2f [%15.2f, %15.2f]%n",
+                    name, count(), mean(), stddev(),
+                    percentile(sorted, 5), percentile(sorted, 50), percentile(sorted, 95),
+                    mean() - halfWidth, mean() + halfWidth);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A ParallelSpeedupReport runs the Simulation of the configuration in the working directory
+ * with 1, 2, 4, ... robot threads up to the number of cores, and prints the wall-clock time
+ * and the speedup over one thread for each.<br/><br/>
+ *
+ * Each run is a separate JVM, so that every thread count starts from the same cold JIT and empty heap
+ * and a later run is not sped up by the code compiled for an earlier one.
+ * Runs use Log_Level=SUMMARY so that writing the log does not hide the robot phase.
+ * The final score of every run is checked against the one thread run.<br/><br/>
+ *
+ * Usage: java -cp &lt;classpath&gt; util.ParallelSpeedupReport [seed]
+ */
+public class ParallelSpeedupReport {
+
+    private ParallelSpeedupReport(){}
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+
+        System.out.printf("Cores: %d%n", cores);
+        System.out.printf("%7s %10s %8s %16s %s%n", "Threads", "Wall(ms)", "Speedup", "Final Score", "");
+        long baseMillis = 0;
+        String baseScore = null;
+        for (int threads : threadCounts) {
+            long start = System.nanoTime();
+            String score = runSimulation(threads, args);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (baseScore == null) {
+                baseMillis = millis;
+                baseScore = score;
+            }
+            System.out.printf("%7d %10d %7.2fx %16s %s%n", threads, millis, (double) baseMillis / millis,
+                    score, score.equals(baseScore) ? "" : "MISMATCH");
+        }
+    }
+
+    /**
+     * Runs the Simulation in a new JVM with a number of robot threads
+     * @param threads the number of threads to step the robots on
+     * @param args the arguments for the Simulation
+     * @return the final score printed by the Simulation
+     */
+    private static String runSimulation(int threads, String[] args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-DRobot_Threads=" + threads);
+        command.add("-DLog_Level=SUMMARY");
+        command.add("automail.Simulation");
+        for (String arg : args) {
+            command.add(arg);
+        }
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String score = "?";
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("Final Score: ")) {
+                    score = line.substring("Final Score: ".length());
+                }
+            }
+        }
+        process.waitFor();
+        return score;
+    }
+
+}
@@ -0,0 +1,63 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Java Flight Recorder event for one step of a mail pool, loading the waiting robots.<br/><br/>
+ *
+ * Only steps longer than the threshold are recorded, 100 us unless the recording sets another,
+ * so a recording shows the loading bursts and not every empty step.
+ */
+@Name("automail.PoolStep")
+@Label("Mail Pool Step")
+@Category({"Automail", "Mail Pool"})
+@Description("The mail pool loading the waiting robots")
+@Threshold("100 us")
+@Enabled(false)
+@StackTrace(false)
+public class PoolStepEvent extends jdk.jfr.Event {
+
+    /** Asked whether the event is enabled, and never committed */
+    private static final PoolStepEvent PROBE = new PoolStepEvent();
+
+    @Label("Time")
+    @Description("The simulation time")
+    int time;
+
+    @Label("Items Loaded")
+    @Description("The number of mail items loaded onto robots")
+    int itemsLoaded;
+
+    @Label("Backlog")
+    @Description("The number of mail items left in the pool")
+    int backlog;
+
+    /**
+     * @return true if the recordings running enable this event
+     */
+    public static boolean isTypeEnabled() {
+        return PROBE.isEnabled();
+    }
+
+    /**
+     * This method ends the event and records it, if it is enabled and lasted long enough
+     * @param time the simulation time
+     * @param itemsLoaded the number of mail items loaded onto robots
+     * @param backlog the number of mail items left in the pool
+     */
+    public void commit(int time, int itemsLoaded, int backlog) {
+        end();
+        if (shouldCommit()) {
+            this.time = time;
+            this.itemsLoaded = itemsLoaded;
+            this.backlog = backlog;
+            commit();
+        }
+    }
+}
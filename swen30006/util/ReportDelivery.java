@@ -2,9 +2,11 @@ package util;
 
 import automail.*;
 import exceptions.MailAlreadyDeliveredException;
-import strategies.Automail;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
 
 /**
  * A ReportDelivery is responsible for tracking the delivery status
@@ -18,40 +20,81 @@ import java.util.ArrayList;
  */
 public class ReportDelivery implements IMailDelivery {
 
-    private static double TOTAL_SCORE = 0;
-    private static ArrayList<MailItem> MAIL_DELIVERED = new ArrayList<>();
+    private double TOTAL_SCORE = 0;
+    /** Delivered state of each mail item, indexed by its dense sequential id */
+    private BitSet MAIL_DELIVERED = new BitSet();
+    private int NUM_OF_MAIL_DELIVERED = 0;
 
-    /** Use Bill Pugh to implement Singleton */
-    private ReportDelivery(){}
+    private final Clock clock;
+    private final EventLog eventLog;
+    private DeliveryMetrics metrics;
 
-    private static class SingletonHelper{
-        private static final ReportDelivery INSTANCE = new ReportDelivery();
+    /**
+     * @param clock the clock of the Simulation
+     * @param eventLog records the delivery of mail items
+     */
+    public ReportDelivery(Clock clock, EventLog eventLog){
+        this.clock = clock;
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * This method makes a delivery report for a fork of the Simulation, starting from
+     * the score and count of this one. The mail items delivered so far are not copied:
+     * they are no longer in the fork, so it cannot deliver them again.
+     * @param clock the clock of the fork
+     * @param eventLog the event log of the fork
+     * @return the delivery report of the fork
+     */
+    public ReportDelivery fork(Clock clock, EventLog eventLog) {
+        ReportDelivery fork = new ReportDelivery(clock, eventLog);
+        fork.TOTAL_SCORE = TOTAL_SCORE;
+        fork.NUM_OF_MAIL_DELIVERED = NUM_OF_MAIL_DELIVERED;
+        return fork;
     }
 
     /**
-     * This method is called to initialise a Singleton object of the ReportDelivery class
-     * @return A ReportDelivery
+     * This method sets the metrics each delivery is counted in
+     * @param metrics the metrics of the Simulation, or null for none
      */
-    public static ReportDelivery getInstance(){
-        return SingletonHelper.INSTANCE;
+    public void setMetrics(DeliveryMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
      * This method gets the number of mail items delivered
      * @return The total number of mail items delivered
      */
-    public static int getNumOfMailDelivered(){
-        return MAIL_DELIVERED.size();
+    public int getNumOfMailDelivered(){
+        return NUM_OF_MAIL_DELIVERED;
+    }
+
+    /**
+     * This method gets the total score of the mail items delivered so far
+     * @return The total score of the Simulation
+     */
+    public double getTotalScore(){
+        return TOTAL_SCORE;
     }
 
     /** Confirm the delivery and calculate the total score */
     public void deliver(MailItem deliveryItem){
-        if(!MAIL_DELIVERED.contains(deliveryItem)){
-            MAIL_DELIVERED.add(deliveryItem);
-            System.out.printf("T: %3d > Delivered(%4d) [%s]%n",
-                    Clock.Time(), MAIL_DELIVERED.size(), deliveryItem.toString());
+        int id = deliveryItem.getIndex();
+        if(!MAIL_DELIVERED.get(id)){
+            MAIL_DELIVERED.set(id);
+            NUM_OF_MAIL_DELIVERED++;
+            eventLog.delivery(clock.Time(), NUM_OF_MAIL_DELIVERED, deliveryItem);
             // Calculate delivery score
             TOTAL_SCORE += calculateDeliveryScore(deliveryItem);
+            int latency = clock.Time() - deliveryItem.getArrivalTime();
+            int priorityLevel = deliveryItem instanceof PriorityMailItem
+                    ? ((PriorityMailItem) deliveryItem).getPriorityLevel() : 0;
+            if (metrics != null) {
+                metrics.delivered(latency, priorityLevel, deliveryItem.getWeight());
+            }
+            if (FlightRecording.isOn() && DeliveryEvent.isTypeEnabled()) {
+                new DeliveryEvent().commit(clock.Time(), id, deliveryItem.getDestFloor(), priorityLevel, latency);
+            }
         }
         else{
             try {
@@ -75,7 +118,27 @@ public class ReportDelivery implements IMailDelivery {
         if(deliveryItem instanceof PriorityMailItem){
             priority_weight = ((PriorityMailItem) deliveryItem).getPriorityLevel();
         }
-        return Math.pow(Clock.Time() - deliveryItem.getArrivalTime(),penalty)*(1+Math.sqrt(priority_weight));
+        return Math.pow(clock.Time() - deliveryItem.getArrivalTime(),penalty)*(1+Math.sqrt(priority_weight));
+    }
+
+    /**
+     * This method writes the score and the mail items delivered so far to a checkpoint
+     * @param out where to write
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeDouble(TOTAL_SCORE);
+        out.writeInt(NUM_OF_MAIL_DELIVERED);
+        Checkpoint.writeBitSet(out, MAIL_DELIVERED);
+    }
+
+    /**
+     * This method restores the score and the mail items delivered written by writeState
+     * @param in where to read
+     */
+    public void readState(DataInput in) throws IOException {
+        TOTAL_SCORE = in.readDouble();
+        NUM_OF_MAIL_DELIVERED = in.readInt();
+        MAIL_DELIVERED = Checkpoint.readBitSet(in);
     }
 
     /**
@@ -87,19 +150,21 @@ public class ReportDelivery implements IMailDelivery {
      * mail item's weight exceed the team capacity of the Automail system)<br/>
      * - Total time to process mail items received + deliver mail items accepted<br/>
      * - Total score of the simulation
+     * @param mailCreated the number of mail items created
+     * @param mailRejected the number of mail items rejected by the mail pool
      */
-    public static void printResults(){
-        System.out.println("T: "+Clock.Time()+" | Simulation complete!");
+    public void printResults(int mailCreated, int mailRejected){
+        System.out.println("T: "+clock.Time()+" | Simulation complete!");
 
         // For debugging when robot is more than one and max. weight exceeds team capacity of the system
-        if (Automail.getMailPool().getNumOfMailItemRejected() > 0){
+        if (mailRejected > 0){
             System.out.printf("Created: %6d; Delivered: %4d; Rejected: %5d%n",
-                    MailGenerator.getMailCreated(),
-                    MAIL_DELIVERED.size(),
-                    Automail.getMailPool().getNumOfMailItemRejected());
+                    mailCreated,
+                    NUM_OF_MAIL_DELIVERED,
+                    mailRejected);
         }
 
-        System.out.println("Final Delivery time: "+Clock.Time());
+        System.out.println("Final Delivery time: "+clock.Time());
         System.out.printf("Final Score: %.2f%n", TOTAL_SCORE);
     }
 
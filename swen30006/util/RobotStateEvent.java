@@ -0,0 +1,68 @@
+package util;
+
+import automail.Robot.RobotState;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for a robot changing state, as written to the event log
+ */
+@Name("automail.RobotState")
+@Label("Robot State Change")
+@Category({"Automail", "Robots"})
+@Description("A robot changing state")
+@Enabled(false)
+@StackTrace(false)
+public class RobotStateEvent extends jdk.jfr.Event {
+
+    /** Asked whether the event is enabled, and never committed */
+    private static final RobotStateEvent PROBE = new RobotStateEvent();
+
+    @Label("Time")
+    @Description("The simulation time")
+    int time;
+
+    @Label("Robot")
+    @Description("The index of the robot in the fleet")
+    int robot;
+
+    @Label("From State")
+    String fromState;
+
+    @Label("To State")
+    String toState;
+
+    @Label("Tube Count")
+    @Description("The number of mail items in the tube of the robot")
+    int tubeCount;
+
+    /**
+     * @return true if the recordings running enable this event
+     */
+    public static boolean isTypeEnabled() {
+        return PROBE.isEnabled();
+    }
+
+    /**
+     * This method records the event, if it is enabled
+     * @param time the simulation time
+     * @param robot the index of the robot in the fleet
+     * @param tubeCount the number of mail items in the tube of the robot
+     * @param fromState the state the robot was in
+     * @param toState the state the robot is in now
+     */
+    public void commit(int time, int robot, int tubeCount, RobotState fromState, RobotState toState) {
+        if (shouldCommit()) {
+            this.time = time;
+            this.robot = robot;
+            this.tubeCount = tubeCount;
+            this.fromState = fromState.name();
+            this.toState = toState.name();
+            commit();
+        }
+    }
+}
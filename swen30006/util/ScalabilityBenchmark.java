@@ -0,0 +1,281 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import automail.SimulationEngine;
+import automail.SimulationResult;
+
+/**
+ * A ScalabilityBenchmark runs whole simulations over a grid of Mail_to_Create, Robots and Floors,
+ * and writes the wall-clock time, ticks per second, peak heap and GC time of each point to a CSV file.<br/><br/>
+ *
+ * Each point runs in a new JVM with Log_Level=SUMMARY. The JVM first warms up with the same point
+ * cut down to at most 10000 mail items, then measures one full run. The other properties come
+ * from the configuration file. A point that takes longer than the timeout is recorded as TIMEOUT
+ * and the larger points are still run.<br/><br/>
+ *
+ * With -baseline, the results are compared with the CSV file of an earlier run, e.g. of another
+ * commit. A point whose wall-clock time or peak heap grew by more than the threshold, and by at least
+ * 20 ms or 20 MB, is flagged as a regression, and the exit status is 1 if there is any.<br/><br/>
+ *
+ * Usage: java -cp &lt;classpath&gt; util.ScalabilityBenchmark [-config file] [-mail 1000,10000,...]
+ * [-robots 1,10,...] [-floors 10,100,...] [-warmup N] [-timeout seconds] [-jvm option]
+ * [-out results.csv] [-baseline old.csv] [-threshold 0.10]
+ */
+public class ScalabilityBenchmark {
+
+    private static final String CSV_HEADER =
+            "mail_to_create,robots,floors,status,wall_ms,ticks,ticks_per_sec,peak_heap_mb,gc_ms,mail_delivered,score";
+    /** The smallest growth in wall-clock time or peak heap flagged, below which it is noise */
+    private static final double MIN_REGRESSION = 20;
+    /** The most mail items a warm-up run creates */
+    private static final int WARMUP_MAIL = 10000;
+
+    private ScalabilityBenchmark(){}
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("-point")) {
+            runPoint(args);
+            return;
+        }
+
+        String configFile = "automail.properties";
+        String mail = "1000,10000,100000,1000000,10000000";
+        String robots = "1,10,100,1000,10000";
+        String floors = "10,100,1000,10000";
+        int warmup = 2;
+        int timeout = 600;
+        List<String> jvmOptions = new ArrayList<>();
+        String out = "scalability.csv";
+        String baseline = null;
+        double threshold = 0.10;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                System.out.println("Missing value of " + args[i]);
+                return;
+            }
+            switch (args[i]) {
+                case "-config": configFile = args[++i]; break;
+                case "-mail": mail = args[++i]; break;
+                case "-robots": robots = args[++i]; break;
+                case "-floors": floors = args[++i]; break;
+                case "-warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "-timeout": timeout = Integer.parseInt(args[++i]); break;
+                case "-jvm": jvmOptions.add(args[++i]); break;
+                case "-out": out = args[++i]; break;
+                case "-baseline": baseline = args[++i]; break;
+                case "-threshold": threshold = Double.parseDouble(args[++i]); break;
+                default:
+                    System.out.println("Unknown argument " + args[i]);
+                    return;
+            }
+        }
+
+        List<String> rows = new ArrayList<>();
+        System.out.printf("%10s %7s %7s %8s %10s %10s %14s %10s %8s%n",
+                "Mail", "Robots", "Floors", "Status", "Wall(ms)", "Ticks", "Ticks/s", "Heap(MB)", "GC(ms)");
+        try (PrintWriter csv = new PrintWriter(new FileWriter(out))) {
+            csv.println(CSV_HEADER);
+            for (String m : mail.split(",")) {
+                for (String r : robots.split(",")) {
+                    for (String f : floors.split(",")) {
+                        String row = runInNewJvm(configFile, m.trim(), r.trim(), f.trim(), warmup, timeout, jvmOptions);
+                        rows.add(row);
+                        csv.println(row);
+                        csv.flush();
+                        String[] v = row.split(",", -1);
+                        System.out.printf("%10s %7s %7s %8s %10s %10s %14s %10s %8s%n",
+                                v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8]);
+                    }
+                }
+            }
+        }
+        System.out.println("Results written to " + out);
+
+        if (baseline != null && compare(readCsv(baseline), rows, threshold) > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one point of the grid in a new JVM
+     * @return the CSV row of the point
+     */
+    private static String runInNewJvm(String configFile, String mail, String robots, String floors,
+                                      int warmup, int timeout, List<String> jvmOptions)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ScalabilityBenchmark.class.getName());
+        command.add("-point");
+        command.add(configFile);
+        command.add(mail);
+        command.add(robots);
+        command.add(floors);
+        command.add(String.valueOf(warmup));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        // Read the output on another thread, so a point that runs too long can be stopped
+        StringBuilder result = new StringBuilder();
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("RESULT ")) {
+                        result.append(line.substring("RESULT ".length()));
+                    }
+                }
+            } catch (IOException e) {
+                // The process was stopped
+            }
+        });
+        reader.start();
+        String prefix = mail + "," + robots + "," + floors + ",";
+        if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            reader.join();
+            return prefix + "TIMEOUT,,,,,,,";
+        }
+        reader.join();
+        if (result.length() == 0) {
+            return prefix + "FAILED,,,,,,,";
+        }
+        return prefix + "OK," + result;
+    }
+
+    /**
+     * Warms up, then measures one full run of a point, and prints its results as "RESULT csv-values".
+     * This runs in the JVM started for the point.
+     * @param args -point, configuration file, Mail_to_Create, Robots, Floors, warm-up runs
+     */
+    private static void runPoint(String[] args) {
+        int mail = Integer.parseInt(args[2]);
+        Configuration configuration = Configuration.load(args[1])
+                .with("Mail_to_Create", args[2])
+                .with("Robots", args[3])
+                .with("Floors", args[4])
+                .with("Log_Level", "SUMMARY");
+        int warmup = Integer.parseInt(args[5]);
+        try {
+            Configuration warmupConfiguration = configuration.with("Mail_to_Create",
+                    String.valueOf(Math.min(mail, WARMUP_MAIL)));
+            for (int i = 0; i < warmup; i++) {
+                new SimulationEngine(warmupConfiguration).run();
+            }
+            System.gc();
+
+            List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    heapPools.add(pool);
+                }
+            }
+            long gcMillis = -totalGcMillis();
+            long start = System.nanoTime();
+            SimulationResult result = new SimulationEngine(configuration).run();
+            long wallNanos = System.nanoTime() - start;
+            gcMillis += totalGcMillis();
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : heapPools) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+
+            System.out.printf(Locale.ROOT, "RESULT %d,%d,%.0f,%.1f,%d,%d,%.2f%n",
+                    wallNanos / 1_000_000, result.getFinalTime(), result.getFinalTime() * 1e9 / wallNanos,
+                    peakHeap / (1024.0 * 1024.0), gcMillis, result.getMailDelivered(), result.getScore());
+        } catch (Exception | OutOfMemoryError e) {
+            System.out.println("Simulation unable to complete: " + e);
+        }
+    }
+
+    /**
+     * @return the time spent in garbage collection so far by all collectors of this JVM
+     */
+    private static long totalGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * @param file a CSV file written by an earlier run
+     * @return its rows by point, as mail_to_create,robots,floors
+     */
+    private static Map<String, String[]> readCsv(String file) throws IOException {
+        Map<String, String[]> rows = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line = in.readLine(); // header
+            while ((line = in.readLine()) != null) {
+                String[] values = line.split(",", -1);
+                rows.put(values[0] + "," + values[1] + "," + values[2], values);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Prints the points of this run that are slower or use more heap than in the baseline by more than the threshold
+     * @param baseline the rows of the baseline by point
+     * @param rows the rows of this run
+     * @param threshold the growth allowed, e.g. 0.10 for 10%
+     * @return the number of regressions
+     */
+    private static int compare(Map<String, String[]> baseline, List<String> rows, double threshold) {
+        int regressions = 0;
+        System.out.printf("%nCompared with the baseline, threshold %.0f%%:%n", 100 * threshold);
+        for (String row : rows) {
+            String[] now = row.split(",", -1);
+            String[] then = baseline.get(now[0] + "," + now[1] + "," + now[2]);
+            if (then == null) {
+                continue;
+            }
+            String point = String.format("Mail_to_Create=%s Robots=%s Floors=%s", now[0], now[1], now[2]);
+            if (then[3].equals("OK") && !now[3].equals("OK")) {
+                System.out.printf("REGRESSION %s: %s, was OK%n", point, now[3]);
+                regressions++;
+                continue;
+            }
+            if (!then[3].equals("OK") || !now[3].equals("OK")) {
+                continue;
+            }
+            regressions += check(point, "wall time (ms)", Double.parseDouble(then[4]), Double.parseDouble(now[4]), threshold);
+            regressions += check(point, "peak heap (MB)", Double.parseDouble(then[7]), Double.parseDouble(now[7]), threshold);
+        }
+        if (regressions == 0) {
+            System.out.println("No regressions");
+        }
+        return regressions;
+    }
+
+    private static int check(String point, String measure, double then, double now, double threshold) {
+        if (now > then * (1 + threshold) && now - then >= MIN_REGRESSION) {
+            System.out.printf("REGRESSION %s: %s %.1f, was %.1f (+%.0f%%)%n",
+                    point, measure, now, then, 100 * (now / then - 1));
+            return 1;
+        }
+        return 0;
+    }
+
+}
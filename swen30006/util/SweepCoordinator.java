@@ -0,0 +1,394 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A SweepCoordinator splits a sweep of the Simulation into work units and hands them to
+ * {@link SweepWorker} JVMs, which it launches on this machine or reaches over a socket.<br/><br/>
+ *
+ * A sweep changes one or more properties of a configuration, e.g. Seed=1..100,
+ * Robots=1,2,3 or Mail_Max_Weight=2000,3000; every combination of values is one work unit.
+ * Each connection to a worker takes one unit at a time. If a worker dies, its unit goes back
+ * in the queue for another worker, and a local worker is launched again. A unit is given up
+ * after it has lost its worker more than the allowed number of retries. A worker that answers
+ * nothing for the timeout counts as dead, and a local one is stopped so it can be launched again.
+ * Once every worker is dead for good, the units still queued fail with "no worker left".<br/><br/>
+ *
+ * The results of all units are merged into one table, followed by the mean over seeds
+ * of every other combination when seeds are swept.<br/><br/>
+ *
+ * Usage: java -cp &lt;classpath&gt; util.SweepCoordinator [-config file] -sweep Key=values ...
+ * [-local N] [-worker host:port ...] [-slots K] [-retries R] [-timeout seconds]
+ */
+public class SweepCoordinator {
+
+    private static Logger log = Logger.getLogger(SweepCoordinator.class.getName());
+
+    private SweepCoordinator(){}
+
+    /** A WorkUnit is one run of the Simulation with some properties changed */
+    private static class WorkUnit {
+        final int index;
+        final Map<String, String> properties;
+        int attempts = 0;
+        String result;
+
+        WorkUnit(int index, Map<String, String> properties) {
+            this.index = index;
+            this.properties = properties;
+        }
+    }
+
+    /** A Worker is where SweepWorker listens, launched again when it is local and has died */
+    private static class Worker {
+        private final String host;
+        private int port;
+        private final boolean local;
+        private Process process;
+        private int launches = 0;
+
+        Worker(String host, int port, boolean local) {
+            this.host = host;
+            this.port = port;
+            this.local = local;
+        }
+
+        /**
+         * Opens a connection to the worker, launching a local worker first if it is not running
+         * @param maxLaunches how many times a local worker may be launched
+         * @param timeout the milliseconds to wait for the worker to connect or to answer
+         * @return a connection to the worker
+         */
+        synchronized Socket connect(int maxLaunches, int timeout) throws IOException {
+            if (local && (process == null || !process.isAlive())) {
+                if (launches >= maxLaunches) {
+                    throw new IOException("Local worker died " + launches + " times");
+                }
+                launch();
+            }
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeout);
+                socket.setSoTimeout(timeout);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
+        }
+
+        /**
+         * @param maxLaunches how many times a local worker may be launched
+         * @return true if the worker is local, not running and may not be launched again
+         */
+        synchronized boolean isSpent(int maxLaunches) {
+            return local && (process == null || !process.isAlive()) && launches >= maxLaunches;
+        }
+
+        private void launch() throws IOException {
+            launches++;
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SweepWorker.class.getName());
+            command.add("0");
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line = in.readLine();
+            if (line == null || !line.startsWith("LISTENING ")) {
+                throw new IOException("Local worker did not start");
+            }
+            port = Integer.parseInt(line.substring("LISTENING ".length()));
+
+            // Keep reading what the worker prints, so it never blocks on a full pipe
+            Thread drain = new Thread(() -> {
+                try {
+                    while (in.readLine() != null) {
+                        // Discard
+                    }
+                } catch (IOException e) {
+                    // The worker has stopped
+                }
+            }, "SweepCoordinator-drain-" + port);
+            drain.setDaemon(true);
+            drain.start();
+        }
+
+        synchronized void stop() {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+
+        /**
+         * Kills a local worker that has stopped answering, and waits for it to die
+         */
+        synchronized void kill() {
+            if (process != null) {
+                try {
+                    process.destroyForcibly().waitFor();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String configFile = "automail.properties";
+        List<String> sweepKeys = new ArrayList<>();
+        List<List<String>> sweepValues = new ArrayList<>();
+        List<Worker> workers = new ArrayList<>();
+        int localWorkers = -1;
+        int slots = 1;
+        int retries = 3;
+        int timeout = 600;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-config") && i + 1 < args.length) {
+                configFile = args[++i];
+            } else if (args[i].equals("-sweep") && i + 1 < args.length) {
+                String sweep = args[++i];
+                int equals = sweep.indexOf('=');
+                sweepKeys.add(sweep.substring(0, equals));
+                sweepValues.add(parseValues(sweep.substring(equals + 1)));
+            } else if (args[i].equals("-local") && i + 1 < args.length) {
+                localWorkers = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-worker") && i + 1 < args.length) {
+                String[] hostPort = args[++i].split(":");
+                workers.add(new Worker(hostPort[0], Integer.parseInt(hostPort[1]), false));
+            } else if (args[i].equals("-slots") && i + 1 < args.length) {
+                slots = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-retries") && i + 1 < args.length) {
+                retries = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-timeout") && i + 1 < args.length) {
+                timeout = Integer.parseInt(args[++i]);
+            } else {
+                System.out.println("Unknown argument " + args[i]);
+                return;
+            }
+        }
+        if (localWorkers < 0) {
+            localWorkers = workers.isEmpty() ? Runtime.getRuntime().availableProcessors() : 0;
+        }
+        for (int i = 0; i < localWorkers; i++) {
+            workers.add(new Worker("localhost", 0, true));
+        }
+        if (workers.isEmpty()) {
+            System.out.println("No workers to run the sweep on");
+            return;
+        }
+
+        List<String> config = Files.readAllLines(Paths.get(configFile), StandardCharsets.ISO_8859_1);
+        List<WorkUnit> units = new ArrayList<>();
+        addUnits(units, sweepKeys, sweepValues, 0, new LinkedHashMap<>());
+
+        BlockingQueue<WorkUnit> queue = new LinkedBlockingQueue<>(units);
+        CountDownLatch finished = new CountDownLatch(units.size());
+        AtomicInteger connections = new AtomicInteger();
+        final int maxRetries = retries;
+        final int timeoutMillis = (int) TimeUnit.SECONDS.toMillis(timeout);
+        for (Worker worker : workers) {
+            for (int slot = 0; slot < slots; slot++) {
+                connections.incrementAndGet();
+                Thread dispatcher = new Thread(() -> {
+                    try {
+                        dispatch(worker, config, queue, finished, maxRetries, timeoutMillis);
+                    } finally {
+                        connections.decrementAndGet();
+                    }
+                }, "SweepCoordinator-" + worker);
+                dispatcher.setDaemon(true);
+                dispatcher.start();
+            }
+        }
+
+        // Wait for every unit, unless every connection is lost first
+        while (!finished.await(100, TimeUnit.MILLISECONDS)) {
+            if (connections.get() == 0) {
+                WorkUnit unit;
+                while ((unit = queue.poll()) != null) {
+                    unit.result = "FAIL no worker left";
+                    finished.countDown();
+                }
+            }
+        }
+        workers.forEach(Worker::stop);
+
+        printReport(units, sweepKeys);
+    }
+
+    /**
+     * Sends work units to one connection to a worker until there are none left
+     * or the worker cannot be reached
+     * @param timeout the milliseconds to wait for the worker to answer before it counts as dead
+     */
+    private static void dispatch(Worker worker, List<String> config, BlockingQueue<WorkUnit> queue,
+                                 CountDownLatch finished, int retries, int timeout) {
+        while (finished.getCount() > 0) {
+            WorkUnit unit = null;
+            try (Socket socket = worker.connect(retries + 1, timeout);
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+                out.println("CONFIG");
+                config.forEach(out::println);
+                out.println("END");
+                while (finished.getCount() > 0) {
+                    unit = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (unit == null) {
+                        continue;
+                    }
+                    StringBuilder request = new StringBuilder("RUN ").append(unit.index);
+                    unit.properties.forEach((key, value) -> request.append(' ').append(key).append('=').append(value));
+                    out.println(request);
+                    String answer = in.readLine();
+                    if (answer == null) {
+                        throw new IOException("Connection closed");
+                    }
+                    unit.result = answer;
+                    unit = null;
+                    finished.countDown();
+                }
+                out.println("QUIT");
+            } catch (IOException e) {
+                log.warning("Lost worker " + worker + ": " + e.getMessage());
+                if (e instanceof SocketTimeoutException) {
+                    worker.kill(); // a hung local worker is launched again
+                }
+                if (unit != null) {
+                    retry(unit, queue, finished, retries);
+                }
+                if (!worker.local || worker.isSpent(retries + 1)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Puts a unit whose worker died back in the queue, or gives it up after too many retries
+     */
+    private static void retry(WorkUnit unit, BlockingQueue<WorkUnit> queue, CountDownLatch finished, int retries) {
+        unit.attempts++;
+        if (unit.attempts > retries) {
+            unit.result = "FAIL worker died " + unit.attempts + " times";
+            finished.countDown();
+        } else {
+            queue.add(unit);
+        }
+    }
+
+    /**
+     * @param values a range of ints like 1..100, or values separated by commas
+     * @return the values of the range or the list
+     */
+    private static List<String> parseValues(String values) {
+        List<String> list = new ArrayList<>();
+        int dots = values.indexOf("..");
+        if (dots >= 0) {
+            int from = Integer.parseInt(values.substring(0, dots));
+            int to = Integer.parseInt(values.substring(dots + 2));
+            for (int value = from; value <= to; value++) {
+                list.add(String.valueOf(value));
+            }
+        } else {
+            for (String value : values.split(",")) {
+                list.add(value.trim());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Adds a work unit for every combination of the swept values, the first key varying slowest
+     */
+    private static void addUnits(List<WorkUnit> units, List<String> keys, List<List<String>> values,
+                                 int depth, LinkedHashMap<String, String> properties) {
+        if (depth == keys.size()) {
+            units.add(new WorkUnit(units.size(), new LinkedHashMap<>(properties)));
+            return;
+        }
+        for (String value : values.get(depth)) {
+            properties.put(keys.get(depth), value);
+            addUnits(units, keys, values, depth + 1, properties);
+        }
+        properties.remove(keys.get(depth));
+    }
+
+    private static void printReport(List<WorkUnit> units, List<String> keys) {
+        StringBuilder header = new StringBuilder();
+        for (String key : keys) {
+            header.append(String.format("%-16s ", key));
+        }
+        System.out.println(header + String.format("%8s %16s %8s %9s %8s %9s %8s",
+                "Time", "Score", "Created", "Delivered", "Rejected", "Wall(ms)", "Retries"));
+
+        // Mean time and score over seeds for each combination of the other properties
+        Map<String, double[]> means = new LinkedHashMap<>();
+        for (WorkUnit unit : units) {
+            StringBuilder row = new StringBuilder();
+            StringBuilder group = new StringBuilder();
+            for (String key : keys) {
+                row.append(String.format("%-16s ", unit.properties.get(key)));
+                if (!key.equals("Seed")) {
+                    group.append(String.format("%-16s ", unit.properties.get(key)));
+                }
+            }
+            String[] fields = unit.result == null ? new String[] {"FAIL"} : unit.result.split(" ", 3);
+            if (fields[0].equals("DONE")) {
+                String[] values = fields[2].split(" ");
+                double time = Double.parseDouble(values[0]);
+                double score = Double.parseDouble(values[1]);
+                System.out.println(row + String.format("%8s %16.2f %8s %9s %8s %9s %8d",
+                        values[0], score, values[2], values[3], values[4], values[5], unit.attempts));
+                double[] mean = means.computeIfAbsent(group.toString(), g -> new double[3]);
+                mean[0] += time;
+                mean[1] += score;
+                mean[2]++;
+            } else {
+                System.out.println(row + (unit.result == null ? "FAIL" : unit.result.replaceFirst("^FAIL \\d+", "FAIL")));
+            }
+        }
+
+        if (keys.contains("Seed")) {
+            System.out.println();
+            StringBuilder groupHeader = new StringBuilder();
+            for (String key : keys) {
+                if (!key.equals("Seed")) {
+                    groupHeader.append(String.format("%-16s ", key));
+                }
+            }
+            System.out.println(groupHeader + String.format("%8s %12s %16s", "Seeds", "Mean Time", "Mean Score"));
+            means.forEach((group, mean) -> System.out.println(group + String.format("%8d %12.2f %16.2f",
+                    (int) mean[2], mean[0] / mean[2], mean[1] / mean[2])));
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import automail.SimulationEngine;
+import automail.SimulationResult;
+
+/**
+ * A SweepWorker runs simulations for a {@link SweepCoordinator} over a plain socket.<br/><br/>
+ *
+ * It listens on a port and prints "LISTENING &lt;port&gt;" once it is ready. Every connection
+ * is served by its own thread, one work unit at a time. The protocol is line based:<br/>
+ * - CONFIG, then the lines of a properties file, then END: the configuration of the sweep<br/>
+ * - RUN &lt;unit&gt; key=value ...: run the configuration with some properties changed,
+ * answered by DONE &lt;unit&gt; &lt;time&gt; &lt;score&gt; &lt;created&gt; &lt;delivered&gt; &lt;rejected&gt; &lt;millis&gt;
+ * or FAIL &lt;unit&gt; &lt;message&gt;<br/>
+ * - QUIT: close the connection<br/><br/>
+ *
+ * Usage: java -cp &lt;classpath&gt; util.SweepWorker [port]
+ */
+public class SweepWorker {
+
+    private static Logger log = Logger.getLogger(SweepWorker.class.getName());
+
+    private SweepWorker(){}
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("LISTENING " + server.getLocalPort());
+            System.out.flush();
+            while (true) {
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> serve(socket), "SweepWorker-" + socket.getRemoteSocketAddress());
+                connection.setDaemon(true);
+                connection.start();
+            }
+        }
+    }
+
+    /**
+     * Serves the requests of one connection until it is closed
+     * @param socket the connection to a coordinator
+     */
+    private static void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+            Configuration configuration = Configuration.getDefault();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.equals("CONFIG")) {
+                    StringBuilder text = new StringBuilder();
+                    while ((line = in.readLine()) != null && !line.equals("END")) {
+                        text.append(line).append('\n');
+                    }
+                    Properties properties = new Properties();
+                    properties.load(new StringReader(text.toString()));
+                    configuration = Configuration.of(properties);
+                } else if (line.startsWith("RUN ")) {
+                    out.println(run(configuration, line.substring("RUN ".length()).trim().split("\\s+")));
+                } else if (line.equals("QUIT")) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.warning("Connection lost: " + e);
+        }
+    }
+
+    /**
+     * Runs one work unit
+     * @param configuration the configuration of the sweep
+     * @param request the unit number, then the properties to change as key=value
+     * @return the answer to the coordinator
+     */
+    private static String run(Configuration configuration, String[] request) {
+        String unit = request[0];
+        try {
+            for (int i = 1; i < request.length; i++) {
+                int equals = request[i].indexOf('=');
+                configuration = configuration.with(request[i].substring(0, equals), request[i].substring(equals + 1));
+            }
+            configuration = configuration.with("Log_Level", "SUMMARY").with("Trace_File", "")
+                    .with("Checkpoint_File", "").with("Resume_From", "").with("Metrics_JMX", "");
+            long start = System.nanoTime();
+            SimulationResult result = new SimulationEngine(configuration).run();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            return String.format("DONE %s %d %s %d %d %d %d", unit, result.getFinalTime(),
+                    Double.toString(result.getScore()), result.getMailCreated(), result.getMailDelivered(),
+                    result.getMailRejected(), millis);
+        } catch (Exception e) {
+            return "FAIL " + unit + " " + String.valueOf(e).replace('\n', ' ');
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for a mail pool loading a heavy mail item onto a team of robots
+ */
+@Name("automail.TeamDispatch")
+@Label("Team Dispatch")
+@Category({"Automail", "Mail Pool"})
+@Description("A team of robots loaded with one heavy mail item")
+@Enabled(false)
+@StackTrace(false)
+public class TeamDispatchEvent extends jdk.jfr.Event {
+
+    /** Asked whether the event is enabled, and never committed */
+    private static final TeamDispatchEvent PROBE = new TeamDispatchEvent();
+
+    @Label("Time")
+    @Description("The simulation time")
+    int time;
+
+    @Label("Mail Item")
+    @Description("The index of the mail item")
+    int mailItem;
+
+    @Label("Weight")
+    @Description("The weight of the mail item in grams")
+    int weight;
+
+    @Label("Team Size")
+    @Description("The number of robots carrying the mail item")
+    int teamSize;
+
+    /**
+     * @return true if the recordings running enable this event
+     */
+    public static boolean isTypeEnabled() {
+        return PROBE.isEnabled();
+    }
+
+    /**
+     * This method records the event, if it is enabled
+     * @param time the simulation time
+     * @param mailItem the index of the mail item
+     * @param weight the weight of the mail item
+     * @param teamSize the number of robots carrying the mail item
+     */
+    public void commit(int time, int mailItem, int weight, int teamSize) {
+        if (shouldCommit()) {
+            this.time = time;
+            this.mailItem = mailItem;
+            this.weight = weight;
+            this.teamSize = teamSize;
+            commit();
+        }
+    }
+}
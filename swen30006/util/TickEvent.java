@@ -0,0 +1,63 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Java Flight Recorder event for one step of a Simulation: adding the mail that arrives,
+ * loading the robots and moving them. With Engine=EVENT a step may jump over several units of time.<br/><br/>
+ *
+ * Only steps longer than the threshold are recorded, 1 ms unless the recording sets another.
+ */
+@Name("automail.Tick")
+@Label("Simulation Tick")
+@Category({"Automail", "Simulation"})
+@Description("One step of the simulation")
+@Threshold("1 ms")
+@Enabled(false)
+@StackTrace(false)
+public class TickEvent extends jdk.jfr.Event {
+
+    /** Asked whether the event is enabled, and never committed */
+    private static final TickEvent PROBE = new TickEvent();
+
+    @Label("From Time")
+    @Description("The simulation time the step started at")
+    int fromTime;
+
+    @Label("To Time")
+    @Description("The simulation time after the step")
+    int toTime;
+
+    @Label("Mail Delivered")
+    @Description("The number of mail items delivered by the end of the step")
+    int mailDelivered;
+
+    /**
+     * @return true if the recordings running enable this event
+     */
+    public static boolean isTypeEnabled() {
+        return PROBE.isEnabled();
+    }
+
+    /**
+     * This method ends the event and records it, if it is enabled and lasted long enough
+     * @param fromTime the simulation time the step started at
+     * @param toTime the simulation time after the step
+     * @param mailDelivered the number of mail items delivered by the end of the step
+     */
+    public void commit(int fromTime, int toTime, int mailDelivered) {
+        end();
+        if (shouldCommit()) {
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+            this.mailDelivered = mailDelivered;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+import automail.Clock;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+
+/**
+ * A TraceReader reads a binary trace written by {@link TraceRecorder}.<br/><br/>
+ *
+ * It writes the events of a range of time back out in the TEXT or COMPACT format of the
+ * {@link EventLog}, optionally only those of one robot or one mail item. With -report it prints
+ * the delivery report of the Simulation instead, worked out from the trace alone.<br/><br/>
+ *
+ * Usage: java -cp &lt;classpath&gt; util.TraceReader trace [-from time] [-to time]
+ * [-robot index] [-item id] [-format TEXT|COMPACT] [-report]
+ */
+public class TraceReader {
+
+    private static Logger log = Logger.getLogger(TraceReader.class.getName());
+
+    private static final EventLog.EventType[] TYPES = EventLog.EventType.values();
+    private static final Robot.RobotState[] STATES = Robot.RobotState.values();
+
+    private final String file;
+
+    /**
+     * @param file the name of the trace, as given to the TraceRecorder
+     */
+    public TraceReader(String file) {
+        this.file = file;
+    }
+
+    /** Receives the events read from a trace */
+    interface EventVisitor {
+        void visit(EventLog.Event event);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: util.TraceReader trace [-from time] [-to time]"
+                    + " [-robot index] [-item id] [-format TEXT|COMPACT] [-report]");
+            return;
+        }
+        int from = 0;
+        int to = Integer.MAX_VALUE;
+        int robot = -1;
+        int item = -1;
+        EventLog.Level format = EventLog.Level.TEXT;
+        boolean report = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-report")) {
+                report = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                System.out.println("Missing value of " + args[i]);
+                return;
+            }
+            switch (args[i]) {
+                case "-from": from = Integer.parseInt(args[++i]); break;
+                case "-to": to = Integer.parseInt(args[++i]); break;
+                case "-robot": robot = Integer.parseInt(args[++i].replaceFirst("^R", "")); break;
+                case "-item": item = Integer.parseInt(args[++i]); break;
+                case "-format": format = EventLog.parseLevel(args[++i]); break;
+                default:
+                    System.out.println("Unknown argument " + args[i]);
+                    return;
+            }
+        }
+
+        TraceReader reader = new TraceReader(args[0]);
+        if (report) {
+            reader.printReport();
+        } else {
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+            reader.write(from, to, robot, item, format, out);
+            out.flush();
+        }
+    }
+
+    /**
+     * This method writes the events of a range of time in the format of the EventLog
+     * @param from the first time written
+     * @param to the last time written
+     * @param robot the index of the only robot whose events are written, or -1 for all events
+     * @param item the id of the only mail item whose events are written, or -1 for all events
+     * @param format TEXT or COMPACT
+     * @param out where to write the events
+     * @throws IOException if the trace cannot be read
+     */
+    public void write(int from, int to, int robot, int item, EventLog.Level format, PrintWriter out)
+            throws IOException {
+        read(from, to, event -> {
+            if ((robot < 0 || event.robot == robot)
+                    && (item < 0 || (event.mailItem != null && event.mailItem.getIndex() == item))) {
+                EventLog.write(format, event, out);
+            }
+        });
+    }
+
+    /**
+     * This method prints the delivery report of the Simulation, as ReportDelivery does,
+     * by replaying the arrivals, rejections and deliveries of the trace
+     * @throws IOException if the trace cannot be read
+     */
+    public void printReport() throws IOException {
+        Clock clock = new Clock(Integer.MAX_VALUE);
+        EventLog eventLog = new EventLog(EventLog.Level.SUMMARY, OutputStream.nullOutputStream());
+        ReportDelivery delivery = new ReportDelivery(clock, eventLog);
+        int[] counts = new int[TYPES.length];
+        read(0, Integer.MAX_VALUE, event -> {
+            counts[event.type.ordinal()]++;
+            clock.Advance(event.time - clock.Time());
+            if (event.type == EventLog.EventType.DELIVERY) {
+                delivery.deliver(event.mailItem);
+            }
+        });
+        if (counts[EventLog.EventType.END.ordinal()] == 0) {
+            log.warning("The trace " + file + " has no end, so the Simulation did not complete");
+        }
+        delivery.printResults(counts[EventLog.EventType.ARRIVAL.ordinal()],
+                counts[EventLog.EventType.REJECTION.ordinal()]);
+    }
+
+    /**
+     * This method reads the events of a range of time, segment after segment.
+     * Segments that end before the range are skipped, and the first event of the range
+     * is found by binary search, as the events are in time order.
+     * @param from the first time read
+     * @param to the last time read
+     * @param visitor receives the events, in the order they were recorded.
+     * The event is reused for the next one.
+     * @throws IOException if the trace cannot be read
+     */
+    void read(int from, int to, EventVisitor visitor) throws IOException {
+        EventLog.Event event = new EventLog.Event();
+        for (int segment = 0; ; segment++) {
+            Path path = TraceRecorder.segmentPath(file, segment);
+            if (!Files.exists(path)) {
+                if (segment == 0) {
+                    throw new IOException("No trace " + file + ": " + path + " does not exist");
+                }
+                return;
+            }
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < TraceRecorder.HEADER_BYTES || buffer.getInt(0) != TraceRecorder.MAGIC
+                    || buffer.getShort(4) != TraceRecorder.VERSION
+                    || buffer.getShort(6) != TraceRecorder.RECORD_BYTES) {
+                throw new IOException(path + " is not a segment of a trace");
+            }
+
+            int records = countRecords(buffer);
+            if (records == 0 || time(buffer, records - 1) < from) {
+                continue;
+            }
+            for (int r = firstRecordFrom(buffer, records, from); r < records; r++) {
+                int p = TraceRecorder.HEADER_BYTES + r * TraceRecorder.RECORD_BYTES;
+                if (buffer.getInt(p) > to) {
+                    return;
+                }
+                decode(buffer, p, event);
+                visitor.visit(event);
+            }
+        }
+    }
+
+    /**
+     * @return the number of records of a segment, up to the first with no type if it was not closed
+     */
+    private static int countRecords(MappedByteBuffer buffer) {
+        int low = 0;
+        int high = (buffer.limit() - TraceRecorder.HEADER_BYTES) / TraceRecorder.RECORD_BYTES;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.get(TraceRecorder.HEADER_BYTES + middle * TraceRecorder.RECORD_BYTES + 28) != 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the first record of a segment at or after a time
+     */
+    private static int firstRecordFrom(MappedByteBuffer buffer, int records, int from) {
+        int low = 0;
+        int high = records;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (time(buffer, middle) < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int time(MappedByteBuffer buffer, int record) {
+        return buffer.getInt(TraceRecorder.HEADER_BYTES + record * TraceRecorder.RECORD_BYTES);
+    }
+
+    /**
+     * Fills an event from the record at a position of a segment
+     */
+    private static void decode(MappedByteBuffer buffer, int p, EventLog.Event event) {
+        event.time = buffer.getInt(p);
+        event.robot = buffer.getInt(p + 4);
+        event.count = buffer.getInt(p + 24);
+        event.type = TYPES[buffer.get(p + 28) - 1];
+        int states = buffer.get(p + 29);
+        event.fromState = (states >> 4 & 0xF) == 0 ? null : STATES[(states >> 4 & 0xF) - 1];
+        event.toState = (states & 0xF) == 0 ? null : STATES[(states & 0xF) - 1];
+        event.tube = buffer.get(p + 30) >> 4 & 0xF;
+        int id = buffer.getInt(p + 8);
+        if (id < 0) {
+            event.mailItem = null;
+            return;
+        }
+        int destination = buffer.getInt(p + 12);
+        int arrivalTime = buffer.getInt(p + 16);
+        int weight = buffer.getInt(p + 20);
+        int priorityLevel = buffer.get(p + 31);
+        event.mailItem = priorityLevel == 0
+                ? new MailItem(id, destination, arrivalTime, weight)
+                : new PriorityMailItem(id, destination, arrivalTime, weight, priorityLevel);
+    }
+}
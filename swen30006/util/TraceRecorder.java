@@ -0,0 +1,162 @@
+package util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+
+/**
+ * A TraceRecorder writes the events of a Simulation as fixed-width binary records
+ * to memory-mapped files, so recording an event costs a few stores into the mapping.<br/><br/>
+ *
+ * The trace is a sequence of segment files named file.00000, file.00001, ... Each segment starts
+ * with a header of HEADER_BYTES bytes and is filled with records of RECORD_BYTES bytes, little-endian:<br/>
+ * - 0: int time<br/>
+ * - 4: int robot index, or -1<br/>
+ * - 8: int mail item id, or -1; then int destination floor, arrival time and weight of the mail item<br/>
+ * - 24: int number of mail items delivered, for a delivery<br/>
+ * - 28: byte event type, EventType ordinal + 1<br/>
+ * - 29: byte from state and to state, RobotState ordinal + 1 in 4 bits each, or 0<br/>
+ * - 30: byte tube (0 or 1) in the high 4 bits, team size needed to carry the mail item in the low 4 bits<br/>
+ * - 31: byte priority level of the mail item, or 0<br/><br/>
+ *
+ * When a segment is full the recorder maps the next one. On close the last segment is cut
+ * to the records written; a trace left by a crash ends at the first record whose type is 0.
+ */
+public class TraceRecorder {
+
+    /** "AMTR" */
+    static final int MAGIC = 0x414D5452;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 32;
+
+    private final String file;
+    private final long segmentBytes;
+    private int segment = -1;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    /**
+     * Creates the first segment of a trace, deleting the segments of an earlier trace of the same name
+     * @param file the name of the trace; segments are named file.00000, file.00001, ...
+     * @param segmentMegabytes the size of a segment in MB, at most 2047 as a segment is mapped at once
+     * @throws IOException if the segment cannot be created
+     */
+    public TraceRecorder(String file, int segmentMegabytes) throws IOException {
+        this.file = file;
+        long records = ((long) Math.min(segmentMegabytes, 2047) * 1024 * 1024 - HEADER_BYTES) / RECORD_BYTES;
+        this.segmentBytes = HEADER_BYTES + Math.max(1, records) * RECORD_BYTES;
+        for (int old = 0; Files.deleteIfExists(segmentPath(file, old)); old++) {
+            // The reader would take them for more of this trace
+        }
+        nextSegment();
+    }
+
+    /**
+     * @param file the name of a trace
+     * @param segment the number of a segment, from 0
+     * @return the path of the segment
+     */
+    static Path segmentPath(String file, int segment) {
+        return Paths.get(String.format("%s.%05d", file, segment));
+    }
+
+    /**
+     * Records an event, mapping the next segment if this one is full
+     * @see EventLog
+     */
+    void record(EventLog.EventType type, int time, int robot, int tube,
+                Robot.RobotState fromState, Robot.RobotState toState, int count, MailItem mailItem) {
+        if (position == segmentBytes) {
+            try {
+                nextSegment();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not create the next segment of trace " + file, e);
+            }
+        }
+        MappedByteBuffer b = buffer;
+        int p = position;
+        b.putInt(p, time);
+        b.putInt(p + 4, robot);
+        if (mailItem == null) {
+            b.putInt(p + 8, -1);
+            b.put(p + 30, (byte) (tube << 4));
+        } else {
+            b.putInt(p + 8, mailItem.getIndex());
+            b.putInt(p + 12, mailItem.getDestFloor());
+            b.putInt(p + 16, mailItem.getArrivalTime());
+            b.putInt(p + 20, mailItem.getWeight());
+            b.put(p + 30, (byte) (tube << 4 | teamSize(mailItem.getWeight())));
+            b.put(p + 31, (byte) (mailItem instanceof PriorityMailItem ?
+                    ((PriorityMailItem) mailItem).getPriorityLevel() : 0));
+        }
+        b.putInt(p + 24, count);
+        b.put(p + 29, (byte) ((fromState == null ? 0 : fromState.ordinal() + 1) << 4
+                | (toState == null ? 0 : toState.ordinal() + 1)));
+        // The type goes last, so a record with a type is complete
+        b.put(p + 28, (byte) (type.ordinal() + 1));
+        position = p + RECORD_BYTES;
+    }
+
+    /**
+     * @param weight the weight of a mail item
+     * @return the number of robots needed to carry it, or 0 if it is too heavy for a team
+     */
+    private static int teamSize(int weight) {
+        if (weight <= Robot.INDIVIDUAL_MAX_WEIGHT) {
+            return 1;
+        }
+        if (weight <= Robot.PAIR_MAX_WEIGHT) {
+            return 2;
+        }
+        return weight <= Robot.TRIPLE_MAX_WEIGHT ? 3 : 0;
+    }
+
+    private void nextSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        segment++;
+        channel = FileChannel.open(segmentPath(file, segment), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, (short) VERSION);
+        buffer.putShort(6, (short) RECORD_BYTES);
+        buffer.putInt(8, segment);
+        position = HEADER_BYTES;
+    }
+
+    /**
+     * This method writes the last segment out and cuts it to the records written
+     */
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            channel.truncate(position);
+            channel.close();
+        } catch (IOException e) {
+            // Fail like a failed write of the trace. A segment left uncut can still be read
+            // up to its first empty record.
+            throw new UncheckedIOException("Could not close trace " + file, e);
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+}